@@ -2,6 +2,9 @@ package com.bdl.annotation.processing.model;
 
 import com.google.common.collect.ImmutableList;
 
+import javax.annotation.Nullable;
+import java.lang.annotation.Annotation;
+
 /**
  * Interface for metadata classes that represent something that can be annotated.
  *
@@ -11,4 +14,23 @@ public interface Annotatable {
 
   /** Annotations defined on the item. */
   ImmutableList<AnnotationMetadata> annotations();
+
+  /** The first annotation of the given type on the item, or null if there is none. */
+  @Nullable
+  default AnnotationMetadata annotation(TypeMetadata type) {
+    for (AnnotationMetadata annotation : annotations()) {
+      if (annotation.type().equals(type)) {
+        return annotation;
+      }
+    }
+    return null;
+  }
+
+  default boolean hasAnnotation(TypeMetadata type) {
+    return annotation(type) != null;
+  }
+
+  default boolean hasAnnotation(Class<? extends Annotation> type) {
+    return hasAnnotation(TypeMetadata.from(type));
+  }
 }
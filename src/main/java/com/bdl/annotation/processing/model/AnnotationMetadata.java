@@ -10,7 +10,7 @@ import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.ExecutableElement;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 /**
  * Encapsulation of Metadata information for an Annotation reference.
@@ -32,34 +32,44 @@ public abstract class AnnotationMetadata implements UsesTypes {
 
   @Override
   public Set<TypeMetadata> getAllTypes() {
-    ImmutableSet.Builder<TypeMetadata> imports = ImmutableSet.builder();
-    imports.addAll(type().getAllTypes());
+    ImmutableSet.Builder<TypeMetadata> types = ImmutableSet.builder();
+    forEachType(types::add);
+    return types.build();
+  }
+
+  @Override
+  public void forEachType(Consumer<? super TypeMetadata> consumer) {
+    type().forEachType(consumer);
     for (ValueMetadata value : values().values()) {
-      imports.addAll(value.type().getAllTypes());
+      value.type().forEachType(consumer);
     }
-    return imports.build();
   }
 
   public String toString(Imports imports) {
-    StringBuilder s = new StringBuilder("@");
-    s.append(type().toString(imports));
+    return appendTo(new StringBuilder(), imports).toString();
+  }
+
+  /** Appends the same text as {@link #toString(Imports)} to the given builder. */
+  public StringBuilder appendTo(StringBuilder s, Imports imports) {
+    type().appendTo(s.append('@'), imports);
     if (values().isEmpty()) {
-      return s.toString();
+      return s;
     }
-    s.append("(");
+    s.append('(');
     if (values().size() == 1 && values().get("value") != null) {
       // a single value with name "value" so we don't need the method name.
-      s.append("\"").append(values().get("value").value()).append("\"");
+      s.append('"').append(values().get("value").value()).append('"');
     } else {
-      s.append(
-          values()
-              .entrySet()
-              .stream()
-              .map(entry -> String.format("%s = \"%s\"", entry.getKey(), entry.getValue()))
-              .collect(Collectors.joining(", ")));
+      boolean first = true;
+      for (Map.Entry<String, ValueMetadata> entry : values().entrySet()) {
+        if (!first) {
+          s.append(", ");
+        }
+        s.append(entry.getKey()).append(" = \"").append(entry.getValue()).append('"');
+        first = false;
+      }
     }
-    s.append(")");
-    return s.toString();
+    return s.append(')');
   }
 
   public static AnnotationMetadata fromType(AnnotationMirror mirror) {
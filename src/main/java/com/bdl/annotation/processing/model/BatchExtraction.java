@@ -0,0 +1,44 @@
+package com.bdl.annotation.processing.model;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableMap;
+
+import javax.lang.model.element.Element;
+
+/**
+ * The result of {@link ClassMetadata#fromElements}: the metadata of each root element, and
+ * statistics about the batch.
+ *
+ * @author Ben Leitner
+ */
+@AutoValue
+public abstract class BatchExtraction {
+
+  /** The metadata of each root element, in the order the roots were given. */
+  public abstract ImmutableMap<Element, ClassMetadata> metadata();
+
+  /** The number of distinct types in the supertype graph of the roots, roots included. */
+  public abstract int typeCount();
+
+  /** How many of those types this batch extracted, rather than finding them already extracted. */
+  public abstract int extractedCount();
+
+  /** Time spent discovering the supertype graph, in nanoseconds. */
+  public abstract long discoveryNanos();
+
+  /**
+   * Time spent extracting the types in the graph, including converting their members, in
+   * nanoseconds.
+   */
+  public abstract long extractionNanos();
+
+  static BatchExtraction create(
+      ImmutableMap<Element, ClassMetadata> metadata,
+      int typeCount,
+      int extractedCount,
+      long discoveryNanos,
+      long extractionNanos) {
+    return new AutoValue_BatchExtraction(
+        metadata, typeCount, extractedCount, discoveryNanos, extractionNanos);
+  }
+}
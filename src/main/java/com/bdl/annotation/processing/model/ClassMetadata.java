@@ -1,26 +1,49 @@
 package com.bdl.annotation.processing.model;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimaps;
 
+import javax.annotation.Nullable;
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeMirror;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-import static java.util.stream.Collectors.toSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
 
 /**
  * Metadata class for a relevant parts of a class to write.
  *
+ * <p>Instances are immutable and may be shared between threads once extracted. Derived views such
+ * as {@link #getAllMethods()} and {@link #getAllFields()} are computed on first use with the racy
+ * single-check idiom: under contention a view may be computed more than once, but each result is
+ * an immutable list reachable only through final fields, so every thread sees it fully formed.
+ *
+ * <p>Supertypes are resolved from the compiler on first use (see {@link InheritanceMetadata}), and
+ * the members of a class extracted from an element are converted one at a time as they are first
+ * read. Since the compiler's model is not thread-safe, call {@link #resolveHierarchy()} on the
+ * processing thread before handing metadata extracted from elements to other threads.
+ *
  * @author Ben Leitner
  */
 @AutoValue
@@ -45,8 +68,26 @@ public abstract class ClassMetadata implements UsesTypes, Annotatable {
     }
   }
 
+  /**
+   * Metadata extracted by {@link #fromElement(Element, ExtractionOptions)}, keyed weakly on the
+   * element and then by options, so entries die with the compilation that produced them. Metadata
+   * whose members or supertypes have not all been converted still refers to the compiler's
+   * elements, and keeps its entry until it is resolved or {@link #clearCache()} is called.
+   */
+  private static final Cache<Element, ConcurrentMap<ExtractionOptions, ClassMetadata>> CACHE =
+      CacheBuilder.newBuilder().weakKeys().build();
+
+  private MemberTable inheritedMembers;
   private ImmutableList<FieldMetadata> allFields;
   private ImmutableList<MethodMetadata> allMethods;
+  private ImmutableListMultimap<String, MethodMetadata> methodsByName;
+  private ImmutableMap<String, FieldMetadata> fieldsByName;
+  private ImmutableListMultimap<Integer, ConstructorMetadata> constructorsByArity;
+  private ImmutableMap<TypeMetadata, AnnotationMetadata> annotationsByType;
+  private TypeSet typeSet;
+  private TypeSet hierarchyTypeSet;
+  /** Structural hash, filled in by {@link Builder#build()}. Zero means not yet computed. */
+  private int hash;
 
   @Override
   public abstract ImmutableList<AnnotationMetadata> annotations();
@@ -62,99 +103,286 @@ public abstract class ClassMetadata implements UsesTypes, Annotatable {
   /** The inheritance metadatas for the types that this one inherits from. */
   public abstract ImmutableList<InheritanceMetadata> inheritances();
 
-  public abstract ImmutableSet<ConstructorMetadata> constructors();
+  /** Constructors that are declared in this class, as an unmodifiable set. */
+  public abstract Set<ConstructorMetadata> constructors();
 
-  /** Fields that are declared in this class. */
-  public abstract ImmutableList<FieldMetadata> fields();
+  /** Fields that are declared in this class, as an unmodifiable list. */
+  public abstract List<FieldMetadata> fields();
 
-  /** Methods that are declared in this class. */
-  public abstract ImmutableList<MethodMetadata> methods();
+  /** Methods that are declared in this class, as an unmodifiable list. */
+  public abstract List<MethodMetadata> methods();
 
   @Override
   public Set<TypeMetadata> getAllTypes() {
-    ImmutableSet.Builder<TypeMetadata> imports = ImmutableSet.builder();
-    imports.addAll(type().getAllTypes());
-    imports.addAll(
-        inheritances()
-            .stream()
-            .map((inheritance) -> inheritance.classMetadata().type())
-            .collect(toSet()));
+    ImmutableSet.Builder<TypeMetadata> types = ImmutableSet.builder();
+    forEachType(types::add);
+    return types.build();
+  }
+
+  @Override
+  public TypeSet typeSet() {
+    TypeSet types = typeSet;
+    if (types == null) {
+      types = TypeSet.of(this);
+      typeSet = types;
+    }
+    return types;
+  }
+
+  /** The union of the {@link #typeSet()} of this class and of every class it inherits from. */
+  public TypeSet hierarchyTypeSet() {
+    TypeSet types = hierarchyTypeSet;
+    if (types == null) {
+      types = typeSet();
+      for (InheritanceMetadata inheritance : inheritances()) {
+        types = types.union(inheritance.classMetadata().hierarchyTypeSet());
+      }
+      hierarchyTypeSet = types;
+    }
+    return types;
+  }
+
+  /**
+   * Visits the types of the class itself, the inherited types as written (not the types they use
+   * in turn), and the types used by annotations, constructors and methods. Fields are not visited.
+   */
+  @Override
+  public void forEachType(Consumer<? super TypeMetadata> consumer) {
+    type().forEachType(consumer);
+    for (InheritanceMetadata inheritance : inheritances()) {
+      consumer.accept(inheritance.type());
+    }
     for (AnnotationMetadata annotation : annotations()) {
-      imports.addAll(annotation.getAllTypes());
+      annotation.forEachType(consumer);
     }
     for (ConstructorMetadata constructor : constructors()) {
-      imports.addAll(constructor.getAllTypes());
+      constructor.forEachType(consumer);
     }
     for (MethodMetadata method : methods()) {
-      imports.addAll(method.getAllTypes());
+      method.forEachType(consumer);
     }
-    return imports.build();
   }
 
   public ImmutableList<FieldMetadata> getAllFields() {
-    if (allFields == null) {
-      Stream<FieldMetadata> fieldStream = Stream.empty();
-      for (InheritanceMetadata inheritance : inheritances()) {
-        fieldStream =
-            Stream.concat(
-                fieldStream,
-                inheritance
-                    .getAllFields()
-                    .stream()
-                    .filter((field) -> field.modifiers().visibility() != Visibility.PRIVATE));
-      }
-
-      fieldStream = Stream.concat(fieldStream, fields().stream());
+    ImmutableList<FieldMetadata> fields = allFields;
+    if (fields == null) {
+      fields = computeAllFields();
+      allFields = fields;
+    }
+    return fields;
+  }
 
-      allFields = ImmutableList.copyOf(fieldStream.sorted().collect(Collectors.toList()));
+  /** Fields inherited along several paths are listed once per path. */
+  private ImmutableList<FieldMetadata> computeAllFields() {
+    List<FieldMetadata> fields = new ArrayList<>();
+    for (MemberTable.Entry entry : inheritedMembers().entries()) {
+      for (FieldMetadata field : entry.declaringClass().fields()) {
+        if (field.modifiers().visibility() != Visibility.PRIVATE) {
+          FieldMetadata converted = field.convertTypeParameters(entry.substitution());
+          for (int i = 0; i < entry.paths(); i++) {
+            fields.add(converted);
+          }
+        }
+      }
     }
-    return allFields;
+    fields.addAll(fields());
+    fields.sort(null);
+    return ImmutableList.copyOf(fields);
   }
 
   /** Methods declared in this type or in any supertype / interface. */
   public ImmutableList<MethodMetadata> getAllMethods() {
-    if (allMethods == null) {
-      Stream<MethodMetadata> methodStream = Stream.empty();
-      for (InheritanceMetadata inheritance : inheritances()) {
-        methodStream =
-            Stream.concat(
-                methodStream,
-                inheritance
-                    .getAllMethods()
-                    .stream()
-                    .filter((method) -> method.modifiers().visibility() != Visibility.PRIVATE));
+    ImmutableList<MethodMetadata> methods = allMethods;
+    if (methods == null) {
+      methods = computeAllMethods();
+      allMethods = methods;
+    }
+    return methods;
+  }
+
+  /**
+   * The classes this one inherits members from, each with the substitution that renames its type
+   * parameters to this class's.
+   */
+  MemberTable inheritedMembers() {
+    MemberTable members = inheritedMembers;
+    if (members == null) {
+      members = MemberTable.inheritedBy(this);
+      inheritedMembers = members;
+    }
+    return members;
+  }
+
+  /**
+   * Collects the visible methods of the hierarchy into a table keyed by name and parameter types,
+   * so that an override or a method inherited along several paths is only ever compared with the
+   * few methods sharing its signature. Within a signature, duplicates are dropped, as is any
+   * abstract method implemented by a concrete method that differs from it only in annotations.
+   */
+  private ImmutableList<MethodMetadata> computeAllMethods() {
+    Map<Signature, List<MethodMetadata>> table = new HashMap<>();
+    int size = 0;
+    for (MemberTable.Entry entry : inheritedMembers().entries()) {
+      for (MethodMetadata method : entry.declaringClass().methods()) {
+        if (method.modifiers().visibility() != Visibility.PRIVATE
+            && addTo(table, method.convertTypeParameters(entry.substitution()))) {
+          size++;
+        }
+      }
+    }
+    for (MethodMetadata method : methods()) {
+      if (addTo(table, method)) {
+        size++;
+      }
+    }
+
+    List<MethodMetadata> methods = new ArrayList<>(size);
+    for (List<MethodMetadata> overloads : table.values()) {
+      for (MethodMetadata method : overloads) {
+        if (!method.modifiers().isAbstract() || !isImplemented(method, overloads)) {
+          methods.add(method);
+        }
+      }
+    }
+    methods.sort(null);
+    return ImmutableList.copyOf(methods);
+  }
+
+  /** Adds the method to the table, returning false if an equal method is already there. */
+  private static boolean addTo(Map<Signature, List<MethodMetadata>> table, MethodMetadata method) {
+    List<MethodMetadata> methods =
+        table.computeIfAbsent(new Signature(method), signature -> new ArrayList<>(1));
+    if (methods.contains(method)) {
+      return false;
+    }
+    methods.add(method);
+    return true;
+  }
+
+  private static boolean isImplemented(MethodMetadata method, List<MethodMetadata> candidates) {
+    for (MethodMetadata candidate : candidates) {
+      if (!candidate.modifiers().isAbstract() && method.isImplementedBy(candidate)) {
+        return true;
       }
+    }
+    return false;
+  }
 
-      methodStream = Stream.concat(methodStream, methods().stream());
+  /** The methods of {@link #getAllMethods()} with the given name. */
+  public ImmutableList<MethodMetadata> methodsNamed(String name) {
+    ImmutableListMultimap<String, MethodMetadata> index = methodsByName;
+    if (index == null) {
+      index = Multimaps.index(getAllMethods(), MethodMetadata::name);
+      methodsByName = index;
+    }
+    return index.get(name);
+  }
 
-      Set<MethodMetadata> methods = methodStream.collect(toSet());
+  /**
+   * The field the given name refers to in this class, or null if there is none: the field declared
+   * in this class, or else the inherited field of the nearest supertype that declares one, which
+   * hides any field of that name further up the hierarchy.
+   */
+  @Nullable
+  public FieldMetadata field(String name) {
+    ImmutableMap<String, FieldMetadata> index = fieldsByName;
+    if (index == null) {
+      Map<String, FieldMetadata> fields = new HashMap<>();
+      for (FieldMetadata field : fields()) {
+        fields.putIfAbsent(field.name(), field);
+      }
+      // Entries list each supertype before the classes it inherits from.
+      for (MemberTable.Entry entry : inheritedMembers().entries()) {
+        for (FieldMetadata field : entry.declaringClass().fields()) {
+          if (field.modifiers().visibility() != Visibility.PRIVATE
+              && !fields.containsKey(field.name())) {
+            fields.put(field.name(), field.convertTypeParameters(entry.substitution()));
+          }
+        }
+      }
+      index = ImmutableMap.copyOf(fields);
+      fieldsByName = index;
+    }
+    return index.get(name);
+  }
 
-      Set<MethodMetadata> concreteMethods =
-          methods.stream().filter((method) -> !method.modifiers().isAbstract()).collect(toSet());
+  /** The constructors declared in this class that take the given number of parameters. */
+  public ImmutableList<ConstructorMetadata> constructorsWithArity(int arity) {
+    ImmutableListMultimap<Integer, ConstructorMetadata> index = constructorsByArity;
+    if (index == null) {
+      index = Multimaps.index(constructors(), constructor -> constructor.parameters().size());
+      constructorsByArity = index;
+    }
+    return index.get(arity);
+  }
 
-      Set<MethodMetadata> strippedConcreteMethods =
-          concreteMethods.stream().map(MethodMetadata::withoutAnnotations).collect(toSet());
+  @Override
+  @Nullable
+  public AnnotationMetadata annotation(TypeMetadata type) {
+    ImmutableMap<TypeMetadata, AnnotationMetadata> index = annotationsByType;
+    if (index == null) {
+      Map<TypeMetadata, AnnotationMetadata> annotations = new HashMap<>();
+      for (AnnotationMetadata annotation : annotations()) {
+        annotations.putIfAbsent(annotation.type(), annotation);
+      }
+      index = ImmutableMap.copyOf(annotations);
+      annotationsByType = index;
+    }
+    return index.get(type);
+  }
 
-      Set<MethodMetadata> abstractMethods =
-          methods
-              .stream()
-              .filter(method -> method.modifiers().isAbstract())
-              .filter(
-                  method ->
-                      !strippedConcreteMethods.contains(method.asConcrete().withoutAnnotations()))
-              .collect(toSet());
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof ClassMetadata)) {
+      return false;
+    }
+    ClassMetadata that = (ClassMetadata) o;
+    return hashCode() == that.hashCode()
+        && category() == that.category()
+        && type().equals(that.type())
+        && modifiers().equals(that.modifiers())
+        && annotations().equals(that.annotations())
+        && inheritances().equals(that.inheritances())
+        && constructors().equals(that.constructors())
+        && fields().equals(that.fields())
+        && methods().equals(that.methods());
+  }
 
-      allMethods =
-          ImmutableList.copyOf(
-              Stream.concat(concreteMethods.stream(), abstractMethods.stream())
-                  .sorted()
-                  .collect(Collectors.toList()));
+  @Override
+  public int hashCode() {
+    int h = hash;
+    if (h == 0) {
+      h =
+          Objects.hash(
+              annotations(),
+              modifiers(),
+              category(),
+              type(),
+              inheritances());
+      hash = h;
     }
-    return allMethods;
+    return h;
   }
 
   public String fullyQualifiedPathName() {
-    return type().packagePrefix() + type().nestingPrefix() + type().name();
+    return type().fullyQualifiedPathName();
+  }
+
+  /**
+   * Resolves the metadata of every supertype in the hierarchy, and converts the members of each
+   * class in it, now rather than on first use.
+   */
+  public ClassMetadata resolveHierarchy() {
+    LazyList.materialize(constructors());
+    LazyList.materialize(fields());
+    LazyList.materialize(methods());
+    for (InheritanceMetadata inheritance : inheritances()) {
+      inheritance.classMetadata().resolveHierarchy();
+    }
+    return this;
   }
 
   @Override
@@ -162,9 +390,136 @@ public abstract class ClassMetadata implements UsesTypes, Annotatable {
     return fullyQualifiedPathName();
   }
 
+  /**
+   * Returns the metadata for the given type element. Results are shared: within a
+   * compilation, each class (and so each supertype in a hierarchy) is extracted only once.
+   */
   public static ClassMetadata fromElement(Element element) {
-    TypeMetadata type = TypeMetadata.fromElement(element);
+    return fromElement(element, ExtractionOptions.defaults());
+  }
+
+  /**
+   * Returns the metadata for the given type element, extracting only what the options ask for. The
+   * options apply to the whole hierarchy, and results are shared between requests with equal
+   * options.
+   */
+  public static ClassMetadata fromElement(Element element, ExtractionOptions options) {
+    ConcurrentMap<ExtractionOptions, ClassMetadata> extracted =
+        CACHE.asMap().computeIfAbsent(element, key -> new ConcurrentHashMap<>());
+    ClassMetadata metadata = extracted.get(options);
+    if (metadata == null) {
+      // Extraction never extracts another class: supertypes are only resolved on first use.
+      metadata = extract(element, options);
+      ClassMetadata existing = extracted.putIfAbsent(options, metadata);
+      metadata = existing == null ? metadata : existing;
+    }
+    return metadata;
+  }
+
+  /**
+   * Returns the metadata for each of the given type elements. The supertype graph of all of them
+   * is discovered first, and each distinct type in it is then extracted once, supertypes first,
+   * with its members converted rather than left to be converted on first use.
+   */
+  public static BatchExtraction fromElements(Collection<? extends Element> roots) {
+    return fromElements(roots, ExtractionOptions.defaults());
+  }
+
+  /** As {@link #fromElements(Collection)}, extracting only what the options ask for. */
+  public static BatchExtraction fromElements(
+      Collection<? extends Element> roots, ExtractionOptions options) {
+    long start = System.nanoTime();
+    Set<Element> discovered = new HashSet<>();
+    List<Element> ordered = new ArrayList<>();
+    for (Element root : roots) {
+      discover(root, options, discovered, ordered);
+    }
+    long discovery = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    int extracted = 0;
+    Map<Element, ClassMetadata> classes = new HashMap<>();
+    for (Element element : ordered) {
+      if (!isCached(element, options)) {
+        extracted++;
+      }
+      ClassMetadata metadata = fromElement(element, options);
+      // The supertypes were extracted first, so linking to them only reads the cache.
+      for (InheritanceMetadata inheritance : metadata.inheritances()) {
+        inheritance.classMetadata();
+      }
+      LazyList.materialize(metadata.constructors());
+      LazyList.materialize(metadata.fields());
+      LazyList.materialize(metadata.methods());
+      classes.put(element, metadata);
+    }
+    ImmutableMap.Builder<Element, ClassMetadata> metadata = ImmutableMap.builder();
+    for (Element root : ImmutableSet.copyOf(roots)) {
+      metadata.put(root, classes.get(root));
+    }
+    long extraction = System.nanoTime() - start;
+
+    return BatchExtraction.create(
+        metadata.build(), ordered.size(), extracted, discovery, extraction);
+  }
+
+  /** Adds the element and its supertypes to the ordered list, each after its own supertypes. */
+  private static void discover(
+      Element element, ExtractionOptions options, Set<Element> discovered, List<Element> ordered) {
+    if (!discovered.add(element)) {
+      return;
+    }
+    TypeElement typeElement = (TypeElement) element;
+    List<TypeMirror> supertypes = new ArrayList<>();
+    supertypes.add(typeElement.getSuperclass());
+    supertypes.addAll(typeElement.getInterfaces());
+    for (TypeMirror supertype : supertypes) {
+      if (supertype instanceof DeclaredType) {
+        Element supertypeElement = ((DeclaredType) supertype).asElement();
+        if (!options.stopsAt(packageOf(supertypeElement))) {
+          discover(supertypeElement, options, discovered, ordered);
+        }
+      }
+    }
+    ordered.add(element);
+  }
 
+  private static String packageOf(Element element) {
+    Element enclosing = element;
+    while (!(enclosing instanceof PackageElement)) {
+      enclosing = enclosing.getEnclosingElement();
+    }
+    return ((PackageElement) enclosing).getQualifiedName().toString();
+  }
+
+  private static boolean isCached(Element element, ExtractionOptions options) {
+    Map<ExtractionOptions, ClassMetadata> extracted = CACHE.getIfPresent(element);
+    return extracted != null && extracted.containsKey(options);
+  }
+
+  /**
+   * Drops all shared metadata, and starts numbering types afresh for {@link TypeSet}. Processors
+   * should call this when a compilation finishes.
+   */
+  public static void clearCache() {
+    CACHE.invalidateAll();
+    TypeSet.clearIds();
+  }
+
+  /**
+   * Returns metadata for the given type element that records only its type, modifiers and
+   * category: no annotations, members or supertypes. Used for supertypes that extraction does not
+   * traverse.
+   */
+  static ClassMetadata opaque(Element element) {
+    return builder()
+        .setModifiers(modifiersOf(element))
+        .setCategory(Category.forKind(element.getKind()))
+        .setType(TypeMetadata.fromElement(element))
+        .build();
+  }
+
+  private static Modifiers modifiersOf(Element element) {
     Modifiers modifiers = Modifiers.visibility(Visibility.forElement(element));
     if (element.getModifiers().contains(Modifier.ABSTRACT)) {
       modifiers = modifiers.makeAbstract();
@@ -175,38 +530,62 @@ public abstract class ClassMetadata implements UsesTypes, Annotatable {
     if (element.getModifiers().contains(Modifier.FINAL)) {
       modifiers = modifiers.makeFinal();
     }
+    return modifiers;
+  }
+
+  private static ClassMetadata extract(Element element, ExtractionOptions options) {
+    TypeMetadata type = TypeMetadata.fromElement(element);
     Builder metadata =
         builder()
-            .setModifiers(modifiers)
+            .setModifiers(modifiersOf(element))
             .setCategory(Category.forKind(element.getKind()))
             .setType(type);
 
     for (AnnotationMirror annotationMirror : element.getAnnotationMirrors()) {
-      metadata.addAnnotation(AnnotationMetadata.fromType(annotationMirror));
+      if (options.includesAnnotation(annotationMirror)) {
+        metadata.addAnnotation(AnnotationMetadata.fromType(annotationMirror));
+      }
     }
 
     TypeElement typeElement = (TypeElement) element;
     TypeMirror superClass = typeElement.getSuperclass();
     if (superClass instanceof DeclaredType) {
-      metadata.addInheritance(InheritanceMetadata.fromType((DeclaredType) superClass));
+      metadata.addInheritance(InheritanceMetadata.fromType((DeclaredType) superClass, options));
     }
 
     for (TypeMirror inherited : typeElement.getInterfaces()) {
-      metadata.addInheritance(InheritanceMetadata.fromType((DeclaredType) inherited));
+      metadata.addInheritance(InheritanceMetadata.fromType((DeclaredType) inherited, options));
     }
 
+    // Only the member elements are collected here; each is converted when it is first read.
+    List<ExecutableElement> methods = new ArrayList<>();
+    List<Element> constructors = new ArrayList<>();
+    List<Element> fields = new ArrayList<>();
     for (Element enclosed : element.getEnclosedElements()) {
+      if (!options.includesMember(enclosed)) {
+        continue;
+      }
       if (enclosed.getKind() == ElementKind.METHOD) {
-        metadata.addMethod(MethodMetadata.fromMethod((ExecutableElement) enclosed));
+        methods.add((ExecutableElement) enclosed);
       }
-      if (enclosed.getKind() == ElementKind.CONSTRUCTOR) {
-        metadata.addConstructor(ConstructorMetadata.fromConstructor(enclosed));
+      if (enclosed.getKind() == ElementKind.CONSTRUCTOR && !options.skipConstructors()) {
+        constructors.add(enclosed);
       }
-      if (enclosed.getKind() == ElementKind.FIELD) {
-        metadata.addField(FieldMetadata.from(type, enclosed));
+      if (enclosed.getKind() == ElementKind.FIELD && !options.skipFields()) {
+        fields.add(enclosed);
       }
     }
-    return metadata.build();
+    return metadata
+        .setLazyMembers(
+            new LazyList<ConstructorMetadata>(
+                    constructors.size(),
+                    i -> ConstructorMetadata.fromConstructor(constructors.get(i)))
+                .asSet(),
+            new LazyList<>(
+                fields.size(), i -> FieldMetadata.from(type, fields.get(i), options)),
+            new LazyList<>(
+                methods.size(), i -> MethodMetadata.fromMethod(methods.get(i), options)))
+        .build();
   }
 
   public static Builder builder() {
@@ -214,8 +593,41 @@ public abstract class ClassMetadata implements UsesTypes, Annotatable {
         .setModifiers(Modifiers.visibility(Visibility.PUBLIC));
   }
 
+  /** The name and parameter types of a method. */
+  private static final class Signature {
+    private final String name;
+    private final ImmutableList<ParameterMetadata> parameters;
+    private final int hash;
+
+    private Signature(MethodMetadata method) {
+      this.name = method.name();
+      this.parameters = method.parameters();
+      // Parameters compare by type alone, and types cache their hash codes.
+      this.hash = 31 * name.hashCode() + parameters.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Signature)) {
+        return false;
+      }
+      Signature that = (Signature) o;
+      return hash == that.hash && name.equals(that.name) && parameters.equals(that.parameters);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
   @AutoValue.Builder
   public abstract static class Builder {
+    private final ImmutableSet.Builder<ConstructorMetadata> constructors = ImmutableSet.builder();
+    private final ImmutableList.Builder<FieldMetadata> fields = ImmutableList.builder();
+    private final ImmutableList.Builder<MethodMetadata> methods = ImmutableList.builder();
+    private boolean lazyMembers;
+
     abstract ImmutableList.Builder<AnnotationMetadata> annotationsBuilder();
 
     public abstract Builder setModifiers(Modifiers modifiers);
@@ -226,11 +638,20 @@ public abstract class ClassMetadata implements UsesTypes, Annotatable {
 
     abstract ImmutableList.Builder<InheritanceMetadata> inheritancesBuilder();
 
-    abstract ImmutableSet.Builder<ConstructorMetadata> constructorsBuilder();
+    abstract Builder setConstructors(Set<ConstructorMetadata> constructors);
 
-    abstract ImmutableList.Builder<FieldMetadata> fieldsBuilder();
+    abstract Builder setFields(List<FieldMetadata> fields);
 
-    abstract ImmutableList.Builder<MethodMetadata> methodsBuilder();
+    abstract Builder setMethods(List<MethodMetadata> methods);
+
+    /** Uses the given views as the members, in place of any added one at a time. */
+    Builder setLazyMembers(
+        Set<ConstructorMetadata> constructors,
+        List<FieldMetadata> fields,
+        List<MethodMetadata> methods) {
+      lazyMembers = true;
+      return setConstructors(constructors).setFields(fields).setMethods(methods);
+    }
 
     public Builder addInheritance(InheritanceMetadata inheritance) {
       inheritancesBuilder().add(inheritance);
@@ -243,20 +664,31 @@ public abstract class ClassMetadata implements UsesTypes, Annotatable {
     }
 
     public Builder addConstructor(ConstructorMetadata constructor) {
-      constructorsBuilder().add(constructor);
+      constructors.add(constructor);
       return this;
     }
 
     public Builder addField(FieldMetadata field) {
-      fieldsBuilder().add(field);
+      fields.add(field);
       return this;
     }
 
     public Builder addMethod(MethodMetadata method) {
-      methodsBuilder().add(method);
+      methods.add(method);
       return this;
     }
 
-    public abstract ClassMetadata build();
+    abstract ClassMetadata autoBuild();
+
+    public ClassMetadata build() {
+      if (!lazyMembers) {
+        setConstructors(constructors.build());
+        setFields(fields.build());
+        setMethods(methods.build());
+      }
+      ClassMetadata metadata = autoBuild();
+      metadata.hashCode();
+      return metadata;
+    }
   }
 }
@@ -11,7 +11,7 @@ import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.VariableElement;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 /**
  * Encapsulation of constructor metadata.
@@ -29,11 +29,16 @@ public abstract class ConstructorMetadata implements Comparable<ConstructorMetad
 
   @Override
   public Set<TypeMetadata> getAllTypes() {
-    ImmutableSet.Builder<TypeMetadata> imports = ImmutableSet.builder();
+    ImmutableSet.Builder<TypeMetadata> types = ImmutableSet.builder();
+    forEachType(types::add);
+    return types.build();
+  }
+
+  @Override
+  public void forEachType(Consumer<? super TypeMetadata> consumer) {
     for (ParameterMetadata param : parameters()) {
-      imports.addAll(param.getAllTypes());
+      param.forEachType(consumer);
     }
-    return imports.build();
   }
 
   @Override
@@ -50,14 +55,13 @@ public abstract class ConstructorMetadata implements Comparable<ConstructorMetad
   }
 
   public String toString(Imports imports) {
-    return String.format(
-        "%s%s(%s)",
-        visibility().prefix(),
-        type().name(),
-        parameters()
-            .stream()
-            .map((param) -> param.toString(imports))
-            .collect(Collectors.joining(", ")));
+    return appendTo(new StringBuilder(), imports).toString();
+  }
+
+  /** Appends the same text as {@link #toString(Imports)} to the given builder. */
+  public StringBuilder appendTo(StringBuilder s, Imports imports) {
+    s.append(visibility().prefix()).append(type().name()).append('(');
+    return ParameterMetadata.appendAll(s, imports, parameters()).append(')');
   }
 
   public static ConstructorMetadata fromConstructor(Element element) {
@@ -0,0 +1,134 @@
+package com.bdl.annotation.processing.model;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableSet;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import java.lang.annotation.Annotation;
+
+/**
+ * Controls how much of a class {@link ClassMetadata#fromElement(Element, ExtractionOptions)}
+ * extracts, so that a processor pays only for the metadata it uses. The defaults extract
+ * everything.
+ *
+ * @author Ben Leitner
+ */
+@AutoValue
+public abstract class ExtractionOptions {
+
+  private static final ExtractionOptions DEFAULTS = builder().build();
+
+  /** Whether private constructors, fields and methods are left out. */
+  public abstract boolean skipPrivateMembers();
+
+  /** Whether package-local constructors, fields and methods are left out. */
+  public abstract boolean skipPackageLocalMembers();
+
+  /** Whether annotations on the class and its members are left out. */
+  public abstract boolean skipAnnotations();
+
+  /**
+   * Qualified names of the annotation types to keep. If empty, annotations of every type are kept
+   * (unless {@link #skipAnnotations()}).
+   */
+  public abstract ImmutableSet<String> annotationAllowList();
+
+  /** Whether fields are left out. */
+  public abstract boolean skipFields();
+
+  /** Whether constructors are left out. */
+  public abstract boolean skipConstructors();
+
+  /**
+   * Packages whose classes are not traversed as supertypes: a supertype in one of them is recorded
+   * with its type, but none of its members or own supertypes. A package ending in {@code ".*"}
+   * also covers its subpackages, so {@code "java.*"} stops at every JDK class.
+   */
+  public abstract ImmutableSet<String> stopPackages();
+
+  boolean includesMember(Element element) {
+    switch (Visibility.forElement(element)) {
+      case PRIVATE:
+        return !skipPrivateMembers();
+      case PACKAGE_LOCAL:
+        return !skipPackageLocalMembers();
+      default:
+        return true;
+    }
+  }
+
+  boolean includesAnnotation(AnnotationMirror annotation) {
+    if (skipAnnotations()) {
+      return false;
+    }
+    if (annotationAllowList().isEmpty()) {
+      return true;
+    }
+    TypeElement type = (TypeElement) annotation.getAnnotationType().asElement();
+    return annotationAllowList().contains(type.getQualifiedName().toString());
+  }
+
+  boolean stopsAt(String packageName) {
+    for (String stop : stopPackages()) {
+      if (stop.endsWith(".*")) {
+        String parent = stop.substring(0, stop.length() - 2);
+        if (packageName.equals(parent)
+            || (packageName.startsWith(parent) && packageName.charAt(parent.length()) == '.')) {
+          return true;
+        }
+      } else if (packageName.equals(stop)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Options that extract everything. */
+  public static ExtractionOptions defaults() {
+    return DEFAULTS;
+  }
+
+  public static Builder builder() {
+    return new AutoValue_ExtractionOptions.Builder()
+        .setSkipPrivateMembers(false)
+        .setSkipPackageLocalMembers(false)
+        .setSkipAnnotations(false)
+        .setSkipFields(false)
+        .setSkipConstructors(false);
+  }
+
+  @AutoValue.Builder
+  public abstract static class Builder {
+    public abstract Builder setSkipPrivateMembers(boolean skip);
+
+    public abstract Builder setSkipPackageLocalMembers(boolean skip);
+
+    public abstract Builder setSkipAnnotations(boolean skip);
+
+    abstract ImmutableSet.Builder<String> annotationAllowListBuilder();
+
+    public abstract Builder setSkipFields(boolean skip);
+
+    public abstract Builder setSkipConstructors(boolean skip);
+
+    abstract ImmutableSet.Builder<String> stopPackagesBuilder();
+
+    public Builder allowAnnotation(Class<? extends Annotation> type) {
+      return allowAnnotation(type.getCanonicalName());
+    }
+
+    public Builder allowAnnotation(String qualifiedName) {
+      annotationAllowListBuilder().add(qualifiedName);
+      return this;
+    }
+
+    public Builder stopAtPackage(String packageName) {
+      stopPackagesBuilder().add(packageName);
+      return this;
+    }
+
+    public abstract ExtractionOptions build();
+  }
+}
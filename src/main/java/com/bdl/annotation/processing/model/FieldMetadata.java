@@ -10,7 +10,9 @@ import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.Modifier;
 import java.util.Comparator;
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Metadata for a field within a class.
@@ -24,6 +26,9 @@ public abstract class FieldMetadata implements Annotatable, Comparable<FieldMeta
       Comparator.comparing((FieldMetadata field) -> field.modifiers().visibility())
           .thenComparing(FieldMetadata::name);
 
+  /** Structural hash, filled in by {@link Builder#build()}. Zero means not yet computed. */
+  private int hash;
+
   public abstract TypeMetadata containingClass();
 
   @Override
@@ -40,14 +45,25 @@ public abstract class FieldMetadata implements Annotatable, Comparable<FieldMeta
     return type().getAllTypes();
   }
 
+  @Override
+  public void forEachType(Consumer<? super TypeMetadata> consumer) {
+    type().forEachType(consumer);
+  }
+
   public String toString(Imports imports) {
-    return String.format(
-        "%s%s%s%s %s",
-        modifiers().visibility().prefix(),
-        modifiers().isStatic() ? "static " : "",
-        modifiers().isFinal() ? "final " : "",
-        type().toString(imports),
-        name());
+    return appendTo(new StringBuilder(), imports).toString();
+  }
+
+  /** Appends the same text as {@link #toString(Imports)} to the given builder. */
+  public StringBuilder appendTo(StringBuilder s, Imports imports) {
+    s.append(modifiers().visibility().prefix());
+    if (modifiers().isStatic()) {
+      s.append("static ");
+    }
+    if (modifiers().isFinal()) {
+      s.append("final ");
+    }
+    return type().appendTo(s, imports).append(' ').append(name());
   }
 
   @Override
@@ -55,11 +71,51 @@ public abstract class FieldMetadata implements Annotatable, Comparable<FieldMeta
     return toString(Imports.empty());
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof FieldMetadata)) {
+      return false;
+    }
+    FieldMetadata that = (FieldMetadata) o;
+    return hashCode() == that.hashCode()
+        && name().equals(that.name())
+        && type().equals(that.type())
+        && modifiers().equals(that.modifiers())
+        && containingClass().equals(that.containingClass())
+        && annotations().equals(that.annotations());
+  }
+
+  @Override
+  public int hashCode() {
+    int h = hash;
+    if (h == 0) {
+      h = Objects.hash(containingClass(), annotations(), modifiers(), type(), name());
+      hash = h;
+    }
+    return h;
+  }
+
   @Override
   public int compareTo(FieldMetadata that) {
     return COMPARATOR.compare(this, that);
   }
 
+  /**
+   * Applies the substitution to the containing class and type of this field, returning {@code
+   * this} if neither changes.
+   */
+  FieldMetadata convertTypeParameters(TypeSubstitution substitution) {
+    TypeMetadata containingClass = substitution.apply(containingClass());
+    TypeMetadata type = substitution.apply(type());
+    if (containingClass == containingClass() && type == type()) {
+      return this;
+    }
+    return toBuilder().containingClass(containingClass).type(type).build();
+  }
+
   abstract Builder toBuilder();
 
   public static FieldMetadata from(Element element) {
@@ -67,6 +123,11 @@ public abstract class FieldMetadata implements Annotatable, Comparable<FieldMeta
   }
 
   static FieldMetadata from(@Nullable TypeMetadata containingClass, Element element) {
+    return from(containingClass, element, ExtractionOptions.defaults());
+  }
+
+  static FieldMetadata from(
+      @Nullable TypeMetadata containingClass, Element element, ExtractionOptions options) {
     Preconditions.checkArgument(
         element.getKind() == ElementKind.FIELD,
         "element %s is not a field (has kind %s)",
@@ -77,7 +138,9 @@ public abstract class FieldMetadata implements Annotatable, Comparable<FieldMeta
     }
     Builder field = builder().containingClass(containingClass);
     for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
-      field.addAnnotation(AnnotationMetadata.fromType(annotation));
+      if (options.includesAnnotation(annotation)) {
+        field.addAnnotation(AnnotationMetadata.fromType(annotation));
+      }
     }
     Modifiers.Builder modifiersBuilder =
         Modifiers.builder().setVisibility(Visibility.forElement(element));
@@ -118,6 +181,12 @@ public abstract class FieldMetadata implements Annotatable, Comparable<FieldMeta
       return this;
     }
 
-    public abstract FieldMetadata build();
+    abstract FieldMetadata autoBuild();
+
+    public FieldMetadata build() {
+      FieldMetadata field = autoBuild();
+      field.hashCode();
+      return field;
+    }
   }
 }
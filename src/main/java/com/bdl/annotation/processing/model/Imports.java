@@ -1,5 +1,7 @@
 package com.bdl.annotation.processing.model;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
@@ -7,8 +9,11 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 
+import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -30,10 +35,19 @@ public class Imports {
 
   private final String packageName;
   private final Map<TypeMetadata, ReferenceType> referenceMap;
+  @Nullable private final RenderingCache renderings;
 
   private Imports(String packageName, Map<TypeMetadata, ReferenceType> referenceMap) {
+    this(packageName, referenceMap, null);
+  }
+
+  private Imports(
+      String packageName,
+      Map<TypeMetadata, ReferenceType> referenceMap,
+      @Nullable RenderingCache renderings) {
     this.packageName = packageName;
     this.referenceMap = referenceMap;
+    this.renderings = renderings;
   }
 
   public static Imports create(String packageName, Iterable<TypeMetadata> imports) {
@@ -45,6 +59,11 @@ public class Imports {
     return EMPTY_IMPORTS;
   }
 
+  /** Starts imports for a file in the given package, to be filled in as the file is generated. */
+  public static Builder builder(String packageName) {
+    return new Builder(packageName);
+  }
+
   private static Multimap<String, TypeMetadata> namesToTypes(Iterable<TypeMetadata> imports) {
     ImmutableMultimap.Builder<String, TypeMetadata> multimap = ImmutableMultimap.builder();
     for (TypeMetadata type : imports) {
@@ -79,7 +98,18 @@ public class Imports {
         || type.packageName().equals("java.lang")
         || (type.packageName().isEmpty()
             && type.nestingPrefix().isEmpty()
-            && type.name().equals(type.name().toLowerCase()));
+            && isLowerCase(type.name()));
+  }
+
+  /** Same as {@code name.equals(name.toLowerCase())}, without building the lower-cased copy. */
+  private static boolean isLowerCase(String name) {
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (Character.toLowerCase(c) != c) {
+        return false;
+      }
+    }
+    return true;
   }
 
   public List<String> getImports() {
@@ -95,10 +125,11 @@ public class Imports {
           break;
         case NESTED_NAME:
           imports.add(
-              packagePrefix(type) + type.outerClassNames().get(type.outerClassNames().size() - 1));
+              type.packagePrefix()
+                  + type.outerClassNames().get(type.outerClassNames().size() - 1));
           break;
         case NAME_ONLY:
-          imports.add(packagePrefix(type) + type.nestingPrefix() + type.name());
+          imports.add(type.fullyQualifiedPathName());
           break;
       }
     }
@@ -106,10 +137,10 @@ public class Imports {
     return ImmutableList.copyOf(imports);
   }
 
-  private String packagePrefix(TypeMetadata type) {
-    return type.packageName().isEmpty() ? "" : type.packageName() + ".";
-  }
-
+  /**
+   * How the given type should be referred to. Raw types are interned and cached on each type, so
+   * this performs no allocation once a type's raw type has been computed.
+   */
   public ReferenceType reference(TypeMetadata type) {
     if (neverNeedsImport(type)) {
       return ReferenceType.NAME_ONLY;
@@ -120,4 +151,175 @@ public class Imports {
     ReferenceType referenceType = referenceMap.get(type.rawType());
     return referenceType == null ? ReferenceType.FULLY_QUALIFIED_PATH_NAME : referenceType;
   }
+
+  /**
+   * Imports that refer to every type as these do, and that also remember how they rendered types
+   * and method signatures, so that a node rendered again is appended as a single string.
+   *
+   * <p>Up to {@code maximumSize} types and as many signatures are kept, and the least recently
+   * used are evicted beyond that, so that generating a very large file does not hold on to every
+   * string it rendered. Nodes are looked up by identity: rendering the same instance again hits
+   * the cache, while an equal copy is rendered afresh.
+   */
+  public Imports withRenderingCache(int maximumSize) {
+    return new Imports(packageName, referenceMap, new RenderingCache(maximumSize));
+  }
+
+  @Nullable
+  Cache<TypeMetadata, String> typeRenderings(boolean withBounds) {
+    if (renderings == null) {
+      return null;
+    }
+    return withBounds ? renderings.typesWithBounds : renderings.types;
+  }
+
+  @Nullable
+  Cache<MethodMetadata, String> methodRenderings() {
+    return renderings == null ? null : renderings.methods;
+  }
+
+  /**
+   * Rendered strings, keyed by node identity. Weak keys compare by identity, which matters for
+   * methods, whose equality ignores parameter names, and let nodes that are no longer used go.
+   */
+  private static final class RenderingCache {
+    private final Cache<TypeMetadata, String> types;
+    private final Cache<TypeMetadata, String> typesWithBounds;
+    private final Cache<MethodMetadata, String> methods;
+
+    private RenderingCache(int maximumSize) {
+      this.types = newCache(maximumSize);
+      this.typesWithBounds = newCache(maximumSize);
+      this.methods = newCache(maximumSize);
+    }
+
+    private static <K, V> Cache<K, V> newCache(int maximumSize) {
+      return CacheBuilder.newBuilder().weakKeys().maximumSize(maximumSize).build();
+    }
+  }
+
+  /**
+   * Imports that are built up while a file is generated, so that it can be generated in a single
+   * pass.
+   *
+   * <p>{@link #scope()} is a live {@link Imports}: rendering with it registers each type it has not
+   * seen before. The first type registered with a given simple name claims that name, and any later
+   * type with the same name is referred to by its fully qualified name. When generation is done,
+   * {@link #build()} freezes the scope, and {@link Imports#getImports()} on the result gives the
+   * import statements to put at the head of the file.
+   *
+   * <p>Builders are not thread-safe.
+   */
+  public static final class Builder {
+    private final String packageName;
+    private final Map<TypeMetadata, ReferenceType> referenceMap = new LinkedHashMap<>();
+    private final Map<String, TypeMetadata> claimedNames = new HashMap<>();
+    private final Imports scope;
+
+    private Builder(String packageName) {
+      this.packageName = packageName;
+      this.scope = new ScopedImports(packageName, referenceMap, claimedNames, this);
+    }
+
+    /** The live imports, which register each new type they are asked to reference. */
+    public Imports scope() {
+      return scope;
+    }
+
+    /** Registers the type if it is new, and returns how it is to be referred to. */
+    public ReferenceType register(TypeMetadata type) {
+      return scope.reference(type);
+    }
+
+    public Builder registerAll(Iterable<TypeMetadata> types) {
+      for (TypeMetadata type : types) {
+        register(type);
+      }
+      return this;
+    }
+
+    /** The imports registered so far, which will not change as more types are registered. */
+    public Imports build() {
+      return new ScopedImports(
+          packageName, ImmutableMap.copyOf(referenceMap), ImmutableMap.copyOf(claimedNames), null);
+    }
+
+    private ReferenceType claim(TypeMetadata rawType) {
+      ReferenceType reference;
+      if (claimedNames.putIfAbsent(rawType.name(), rawType) != null) {
+        reference = ReferenceType.FULLY_QUALIFIED_PATH_NAME;
+      } else if (rawType.packageName().equals(packageName)) {
+        reference =
+            rawType.outerClassNames().isEmpty()
+                ? ReferenceType.NAME_ONLY
+                : ReferenceType.NESTED_NAME;
+      } else {
+        reference = ReferenceType.NAME_ONLY;
+      }
+      referenceMap.put(rawType, reference);
+      return reference;
+    }
+  }
+
+  /**
+   * Imports that answer from the types registered with a {@link Builder}, which may include types
+   * of the file's own package whose names were already claimed. Unregistered types are registered
+   * while the builder is live. Once it is frozen, an unregistered type whose simple name was
+   * claimed by another type is referred to by its fully qualified name, and any other follows the
+   * usual rules.
+   */
+  private static final class ScopedImports extends Imports {
+    private final Map<TypeMetadata, ReferenceType> registered;
+    private final Map<String, TypeMetadata> claimedNames;
+    @Nullable private final Builder builder;
+
+    private ScopedImports(
+        String packageName,
+        Map<TypeMetadata, ReferenceType> registered,
+        Map<String, TypeMetadata> claimedNames,
+        @Nullable Builder builder) {
+      this(packageName, registered, claimedNames, builder, null);
+    }
+
+    private ScopedImports(
+        String packageName,
+        Map<TypeMetadata, ReferenceType> registered,
+        Map<String, TypeMetadata> claimedNames,
+        @Nullable Builder builder,
+        @Nullable RenderingCache renderings) {
+      super(packageName, registered, renderings);
+      this.registered = registered;
+      this.claimedNames = claimedNames;
+      this.builder = builder;
+    }
+
+    /**
+     * A live scope keeps registering through the cache, which is safe because a type's reference
+     * never changes once it has been registered.
+     */
+    @Override
+    public Imports withRenderingCache(int maximumSize) {
+      return new ScopedImports(
+          super.packageName, registered, claimedNames, builder, new RenderingCache(maximumSize));
+    }
+
+    @Override
+    public ReferenceType reference(TypeMetadata type) {
+      if (neverNeedsImport(type)) {
+        return ReferenceType.NAME_ONLY;
+      }
+      TypeMetadata rawType = type.rawType();
+      ReferenceType reference = registered.get(rawType);
+      if (reference != null) {
+        return reference;
+      }
+      if (builder != null) {
+        return builder.claim(rawType);
+      }
+      // The type was not registered, so any type holding its simple name is another one.
+      return claimedNames.containsKey(rawType.name())
+          ? ReferenceType.FULLY_QUALIFIED_PATH_NAME
+          : super.reference(type);
+    }
+  }
 }
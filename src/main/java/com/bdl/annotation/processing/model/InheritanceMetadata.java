@@ -1,89 +1,159 @@
 package com.bdl.annotation.processing.model;
 
 import com.google.auto.value.AutoValue;
-import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
+import javax.annotation.Nullable;
+import javax.lang.model.element.Element;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeMirror;
-import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
  * Encapsulation of metadata from the inheritance of an abstract class or interface.
  *
+ * <p>The inherited class's {@link ClassMetadata} is resolved on demand: instances created by
+ * {@link #fromType(DeclaredType)} only record the inherited {@link #type()}, and extract the
+ * supertype on the first call to {@link #classMetadata()}. Equality is unaffected by whether
+ * resolution has happened yet. Inherited members are flattened by {@link ClassMetadata}, which
+ * converts each one once for the whole hierarchy.
+ *
+ * <p>Like {@link ClassMetadata}, instances are safe to share between threads once resolved.
+ *
  * @author Ben Leitner
  */
 @AutoValue
 public abstract class InheritanceMetadata implements UsesTypes {
 
-  private ImmutableList<FieldMetadata> allFields;
-  private ImmutableList<MethodMetadata> allMethods;
+  /** Structural hash, filled in by {@link Builder#build()}. Zero means not yet computed. */
+  private int hash;
 
   /** The type parameters given in the {@code extends} or {@code implements} clause. */
   public abstract ImmutableList<TypeMetadata> inheritanceParams();
 
-  public abstract ClassMetadata classMetadata();
+  /** The inherited class's own type, declared with its own type parameters. */
+  public abstract TypeMetadata type();
 
-  @Override
-  public Set<TypeMetadata> getAllTypes() {
-    return classMetadata().getAllTypes();
+  abstract Supplier<ClassMetadata> classMetadataSupplier();
+
+  /** The metadata of the inherited class, extracted on the first call if necessary. */
+  public ClassMetadata classMetadata() {
+    return classMetadataSupplier().get();
   }
 
-  ImmutableList<FieldMetadata> getAllFields() {
-    if (allFields == null) {
-      final Map<String, String> paramNamesMap = getParamNamesMap();
-      allFields =
-          ImmutableList.copyOf(
-              classMetadata()
-                  .getAllFields()
-                  .stream()
-                  .map(
-                      input ->
-                          input
-                              .toBuilder()
-                              .containingClass(
-                                  input.containingClass().convertTypeParams(paramNamesMap))
-                              .type(input.type().convertTypeParams(paramNamesMap))
-                              .build())
-                  .collect(Collectors.toList()));
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof InheritanceMetadata)) {
+      return false;
     }
-    return allFields;
+    InheritanceMetadata that = (InheritanceMetadata) o;
+    return hashCode() == that.hashCode()
+        && inheritanceParams().equals(that.inheritanceParams())
+        && type().equals(that.type())
+        && classMetadata().equals(that.classMetadata());
   }
 
-  ImmutableList<MethodMetadata> getAllMethods() {
-    if (allMethods == null) {
-      final Map<String, String> paramNamesMap = getParamNamesMap();
-      allMethods =
-          ImmutableList.copyOf(
-              classMetadata()
-                  .getAllMethods()
-                  .stream()
-                  .map(input -> input.convertTypeParameters(paramNamesMap))
-                  .collect(Collectors.toList()));
+  /** Hashes only the parts known before resolution, so hashing never extracts the supertype. */
+  @Override
+  public int hashCode() {
+    int h = hash;
+    if (h == 0) {
+      h = Objects.hash(inheritanceParams(), type());
+      hash = h;
     }
-    return allMethods;
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "InheritanceMetadata{inheritanceParams=%s, classMetadata=%s}",
+        inheritanceParams(), type().fullyQualifiedPathName());
   }
 
-  private Map<String, String> getParamNamesMap() {
+  @Override
+  public Set<TypeMetadata> getAllTypes() {
+    return classMetadata().getAllTypes();
+  }
+
+  @Override
+  public void forEachType(Consumer<? super TypeMetadata> consumer) {
+    classMetadata().forEachType(consumer);
+  }
+
+  /** Renames the inherited class's type parameters to those given in the inheritance clause. */
+  TypeSubstitution substitution() {
     ImmutableMap.Builder<String, String> paramNamesMap = ImmutableMap.builder();
     int i = 0;
     for (TypeMetadata typeParam : inheritanceParams()) {
-      paramNamesMap.put(classMetadata().type().params().get(i).name(), typeParam.name());
+      paramNamesMap.put(type().params().get(i).name(), typeParam.name());
       i++;
     }
-    return paramNamesMap.build();
+    return TypeSubstitution.of(paramNamesMap.build());
   }
 
   public static InheritanceMetadata fromType(DeclaredType type) {
+    return fromType(type, ExtractionOptions.defaults());
+  }
+
+  /**
+   * Records the inheritance of the given type, whose class metadata will be extracted with the
+   * given options. A type in one of the options' {@link ExtractionOptions#stopPackages()} is not
+   * traversed: its class metadata has no members or supertypes.
+   */
+  static InheritanceMetadata fromType(DeclaredType type, ExtractionOptions options) {
     Builder metadata = InheritanceMetadata.builder();
     for (TypeMirror typeParam : type.getTypeArguments()) {
       metadata.addInheritanceParam(TypeMetadata.fromType(typeParam));
     }
-    metadata.setClassMetadata(ClassMetadata.fromElement(type.asElement()));
-    return metadata.build();
+    Element element = type.asElement();
+    TypeMetadata inherited = TypeMetadata.fromElement(element);
+    Supplier<ClassMetadata> classMetadata =
+        options.stopsAt(inherited.packageName())
+            ? () -> ClassMetadata.opaque(element)
+            : () -> ClassMetadata.fromElement(element, options);
+    return metadata
+        .setType(inherited)
+        .setClassMetadataSupplier(new Resolver(classMetadata))
+        .build();
+  }
+
+  /**
+   * Memoizes the inherited class's metadata like {@link Suppliers#memoize}, but drops the delegate
+   * once it has run, so that resolved metadata held in shared caches does not keep the compiler's
+   * elements reachable.
+   */
+  private static final class Resolver implements Supplier<ClassMetadata> {
+    @Nullable private volatile Supplier<ClassMetadata> delegate;
+    private ClassMetadata value;
+
+    private Resolver(Supplier<ClassMetadata> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public ClassMetadata get() {
+      if (delegate != null) {
+        synchronized (this) {
+          Supplier<ClassMetadata> pending = delegate;
+          if (pending != null) {
+            value = pending.get();
+            // The volatile write publishes the value to readers that see the delegate gone.
+            delegate = null;
+          }
+        }
+      }
+      return value;
+    }
   }
 
   static Builder builder() {
@@ -94,7 +164,14 @@ public abstract class InheritanceMetadata implements UsesTypes {
   abstract static class Builder {
     abstract ImmutableList.Builder<TypeMetadata> inheritanceParamsBuilder();
 
-    abstract Builder setClassMetadata(ClassMetadata classMetadata);
+    abstract Builder setType(TypeMetadata type);
+
+    abstract Builder setClassMetadataSupplier(Supplier<ClassMetadata> classMetadata);
+
+    Builder setClassMetadata(ClassMetadata classMetadata) {
+      return setType(classMetadata.type())
+          .setClassMetadataSupplier(Suppliers.ofInstance(classMetadata));
+    }
 
     Builder addInheritanceParam(TypeMetadata type) {
       inheritanceParamsBuilder().add(type);
@@ -105,16 +182,19 @@ public abstract class InheritanceMetadata implements UsesTypes {
 
     InheritanceMetadata build() {
       InheritanceMetadata metadata = autoBuild();
-      Preconditions.checkState(
-          metadata.inheritanceParams().size() == metadata.classMetadata().type().params().size(),
-          "Cannot inherit %s with type params <%s>, the sizes do not match.",
-          metadata.classMetadata().type().toString(Imports.empty(), true),
-          metadata
-              .inheritanceParams()
-              .stream()
-              .map(TypeMetadata::toString)
-              .collect(Collectors.joining(", ")));
-
+      if (metadata.inheritanceParams().size() != metadata.type().params().size()) {
+        throw new IllegalStateException(
+            String.format(
+                "Cannot inherit %s with type params <%s>, the sizes do not match.",
+                metadata.type().toString(Imports.empty(), true),
+                metadata
+                    .inheritanceParams()
+                    .stream()
+                    .map(TypeMetadata::toString)
+                    .collect(Collectors.joining(", "))));
+      }
+
+      metadata.hashCode();
       return metadata;
     }
   }
@@ -0,0 +1,98 @@
+package com.bdl.annotation.processing.model;
+
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * An unmodifiable list whose elements are created on first access.
+ *
+ * <p>Concurrent first reads of the same index may each run the converter, but only the first
+ * result stored is kept, and every reader sees that one. Once every element has been converted,
+ * the converter is dropped, along with whatever compiler state it captured.
+ *
+ * @author Ben Leitner
+ */
+final class LazyList<E> extends AbstractList<E> implements RandomAccess {
+
+  /** Null once every element has been converted. */
+  private volatile IntFunction<? extends E> converter;
+  private final AtomicReferenceArray<E> elements;
+  private final AtomicInteger unconverted;
+
+  LazyList(int size, IntFunction<? extends E> converter) {
+    this.converter = size == 0 ? null : converter;
+    this.elements = new AtomicReferenceArray<>(size);
+    this.unconverted = new AtomicInteger(size);
+  }
+
+  @Override
+  public E get(int index) {
+    E element = elements.get(index);
+    if (element == null) {
+      IntFunction<? extends E> convert = converter;
+      if (convert == null) {
+        // The converter is only dropped after every element has been stored.
+        return elements.get(index);
+      }
+      E converted = convert.apply(index);
+      if (elements.compareAndSet(index, null, converted)) {
+        if (unconverted.decrementAndGet() == 0) {
+          converter = null;
+        }
+        element = converted;
+      } else {
+        element = elements.get(index);
+      }
+    }
+    return element;
+  }
+
+  @Override
+  public int size() {
+    return elements.length();
+  }
+
+  /** Converts every element that has not been accessed yet. */
+  void materialize() {
+    for (int i = 0; i < size(); i++) {
+      get(i);
+    }
+  }
+
+  /** A set view of this list, for elements that are known to be distinct. */
+  Set<E> asSet() {
+    return new AsSet();
+  }
+
+  /** Converts every element of a lazy list or set; other collections are left alone. */
+  static void materialize(Iterable<?> collection) {
+    if (collection instanceof LazyList) {
+      ((LazyList<?>) collection).materialize();
+    } else if (collection instanceof LazyList.AsSet) {
+      ((LazyList<?>.AsSet) collection).list().materialize();
+    }
+  }
+
+  private final class AsSet extends AbstractSet<E> {
+
+    private LazyList<E> list() {
+      return LazyList.this;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+      return LazyList.this.iterator();
+    }
+
+    @Override
+    public int size() {
+      return LazyList.this.size();
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package com.bdl.annotation.processing.model;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The classes whose members a class inherits, flattened across its whole hierarchy.
+ *
+ * <p>Each {@link Entry} names a class that declares inherited members, together with the single
+ * substitution that renames that class's type parameters as seen from the inheriting class. The
+ * substitution is composed along the inheritance path as the table is built, so the members
+ * themselves are left untouched until they are requested, and each is then converted once rather
+ * than once per level of the hierarchy.
+ *
+ * <p>A class reached along several paths that agree on its substitution has a single entry, which
+ * counts the paths.
+ *
+ * @author Ben Leitner
+ */
+final class MemberTable {
+
+  private final ImmutableList<Entry> entries;
+
+  private MemberTable(ImmutableList<Entry> entries) {
+    this.entries = entries;
+  }
+
+  ImmutableList<Entry> entries() {
+    return entries;
+  }
+
+  /** Builds the table of the classes the given class inherits members from. */
+  static MemberTable inheritedBy(ClassMetadata metadata) {
+    Map<Entry, Entry> entries = new LinkedHashMap<>();
+    for (InheritanceMetadata inheritance : metadata.inheritances()) {
+      ClassMetadata supertype = inheritance.classMetadata();
+      TypeSubstitution substitution = inheritance.substitution();
+      add(entries, new Entry(supertype, substitution, 1));
+      for (Entry entry : supertype.inheritedMembers().entries()) {
+        add(
+            entries,
+            new Entry(
+                entry.declaringClass,
+                entry.substitution.andThen(substitution, entry.declaringClass.type().params()),
+                entry.paths));
+      }
+    }
+    return new MemberTable(ImmutableList.copyOf(entries.values()));
+  }
+
+  private static void add(Map<Entry, Entry> entries, Entry entry) {
+    entries.merge(
+        entry,
+        entry,
+        (first, second) ->
+            new Entry(first.declaringClass, first.substitution, first.paths + second.paths));
+  }
+
+  /** A class declaring inherited members, and how its type parameters are seen. */
+  static final class Entry {
+    private final ClassMetadata declaringClass;
+    private final TypeSubstitution substitution;
+    private final int paths;
+
+    private Entry(ClassMetadata declaringClass, TypeSubstitution substitution, int paths) {
+      this.declaringClass = declaringClass;
+      this.substitution = substitution;
+      this.paths = paths;
+    }
+
+    ClassMetadata declaringClass() {
+      return declaringClass;
+    }
+
+    /** Renames the declaring class's type parameters to those of the inheriting class. */
+    TypeSubstitution substitution() {
+      return substitution;
+    }
+
+    /** The number of inheritance paths along which the declaring class is reached this way. */
+    int paths() {
+      return paths;
+    }
+
+    /** Entries are equal when they view the same class through equal substitutions. */
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Entry)) {
+        return false;
+      }
+      Entry that = (Entry) o;
+      return declaringClass == that.declaringClass && substitution.equals(that.substitution);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(declaringClass) + substitution.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return declaringClass.fullyQualifiedPathName() + substitution;
+    }
+  }
+}
@@ -2,6 +2,7 @@ package com.bdl.annotation.processing.model;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -15,8 +16,9 @@ import javax.lang.model.element.VariableElement;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 import static java.util.Comparator.comparing;
 
@@ -33,6 +35,9 @@ public abstract class MethodMetadata implements Comparable<MethodMetadata>, Uses
           .thenComparing(MethodMetadata::name)
           .thenComparing(MethodMetadata::parameters, Comparators.forLists(ParameterMetadata::type));
 
+  /** Structural hash, filled in by {@link Builder#build()}. Zero means not yet computed. */
+  private int hash;
+
   @Override
   public abstract ImmutableList<AnnotationMetadata> annotations();
 
@@ -47,20 +52,39 @@ public abstract class MethodMetadata implements Comparable<MethodMetadata>, Uses
   public abstract ImmutableList<ParameterMetadata> parameters();
 
   MethodMetadata convertTypeParameters(Map<String, String> paramNameMap) {
-    paramNameMap = augmentParamNameMap(paramNameMap);
-    Builder metadata =
-        MethodMetadata.builder()
-            .setModifiers(modifiers())
-            .setName(name())
-            .setType(type().convertTypeParams(paramNameMap));
-    for (TypeMetadata typeParam : typeParameters()) {
-      metadata.addTypeParameter(typeParam.convertTypeParams(paramNameMap));
-    }
+    return convertTypeParameters(TypeSubstitution.of(paramNameMap));
+  }
+
+  /**
+   * Applies the substitution to the signature of this method. Annotations are not carried over.
+   * Returns {@code this} if there are no annotations and no type in the signature changes.
+   */
+  MethodMetadata convertTypeParameters(TypeSubstitution substitution) {
+    substitution = TypeSubstitution.of(augmentParamNameMap(substitution.asMap()));
+    TypeMetadata type = substitution.apply(type());
+    ImmutableList<TypeMetadata> typeParameters = substitution.applyAll(typeParameters());
+    boolean changed =
+        !annotations().isEmpty() || type != type() || typeParameters != typeParameters();
+    ImmutableList.Builder<ParameterMetadata> parameters = ImmutableList.builder();
     for (ParameterMetadata param : parameters()) {
-      metadata.addParameter(
-          ParameterMetadata.of(param.type().convertTypeParams(paramNameMap), param.name()));
+      TypeMetadata paramType = substitution.apply(param.type());
+      if (paramType == param.type()) {
+        parameters.add(param);
+      } else {
+        parameters.add(ParameterMetadata.of(paramType, param.name()));
+        changed = true;
+      }
     }
-    return metadata.build();
+    if (!changed) {
+      return this;
+    }
+    return builder()
+        .setModifiers(modifiers())
+        .setName(name())
+        .setType(type)
+        .setTypeParameters(typeParameters)
+        .setParameters(parameters.build())
+        .build();
   }
 
   /**
@@ -87,6 +111,52 @@ public abstract class MethodMetadata implements Comparable<MethodMetadata>, Uses
     return candidate;
   }
 
+  /**
+   * Whether the given concrete method implements this abstract one: that is, whether the two differ
+   * in nothing but their annotations and abstractness. Equivalent to comparing {@code
+   * asConcrete().withoutAnnotations()} with {@code concrete.withoutAnnotations()}, without building
+   * either copy.
+   */
+  boolean isImplementedBy(MethodMetadata concrete) {
+    Modifiers modifiers = modifiers();
+    Modifiers concreteModifiers = concrete.modifiers();
+    return name().equals(concrete.name())
+        && type().equals(concrete.type())
+        && parameters().equals(concrete.parameters())
+        && typeParameters().equals(concrete.typeParameters())
+        && modifiers.visibility() == concreteModifiers.visibility()
+        && modifiers.isStatic() == concreteModifiers.isStatic()
+        && modifiers.isFinal() == concreteModifiers.isFinal();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof MethodMetadata)) {
+      return false;
+    }
+    MethodMetadata that = (MethodMetadata) o;
+    return hashCode() == that.hashCode()
+        && name().equals(that.name())
+        && type().equals(that.type())
+        && modifiers().equals(that.modifiers())
+        && parameters().equals(that.parameters())
+        && typeParameters().equals(that.typeParameters())
+        && annotations().equals(that.annotations());
+  }
+
+  @Override
+  public int hashCode() {
+    int h = hash;
+    if (h == 0) {
+      h = Objects.hash(annotations(), modifiers(), typeParameters(), name(), type(), parameters());
+      hash = h;
+    }
+    return h;
+  }
+
   @Override
   public int compareTo(MethodMetadata that) {
     return COMPARATOR.compare(this, that);
@@ -94,41 +164,60 @@ public abstract class MethodMetadata implements Comparable<MethodMetadata>, Uses
 
   @Override
   public Set<TypeMetadata> getAllTypes() {
-    ImmutableSet.Builder<TypeMetadata> imports = ImmutableSet.builder();
+    ImmutableSet.Builder<TypeMetadata> types = ImmutableSet.builder();
+    forEachType(types::add);
+    return types.build();
+  }
+
+  @Override
+  public void forEachType(Consumer<? super TypeMetadata> consumer) {
     for (TypeMetadata typeParam : typeParameters()) {
-      imports.addAll(typeParam.getAllTypes());
+      typeParam.forEachType(consumer);
     }
-    imports.addAll(type().getAllTypes());
+    type().forEachType(consumer);
     for (ParameterMetadata param : parameters()) {
-      imports.addAll(param.getAllTypes());
+      param.forEachType(consumer);
     }
-    return imports.build();
   }
 
-  private String typeParametersPrefix(Imports imports) {
-    if (typeParameters().isEmpty()) {
-      return "";
+  public String toString(Imports imports) {
+    Cache<MethodMetadata, String> renderings = imports.methodRenderings();
+    if (renderings == null) {
+      return render(new StringBuilder(), imports).toString();
+    }
+    String rendered = renderings.getIfPresent(this);
+    if (rendered == null) {
+      rendered = render(new StringBuilder(), imports).toString();
+      renderings.put(this, rendered);
     }
-    return String.format(
-        "<%s> ",
-        typeParameters()
-            .stream()
-            .map(input -> input.toString(imports, true))
-            .collect(Collectors.joining(", ")));
+    return rendered;
   }
 
-  public String toString(Imports imports) {
-    return String.format(
-        "%s%s%s%s %s(%s)",
-        modifiers().visibility().prefix(),
-        modifiers().isAbstract() ? "abstract " : "",
-        typeParametersPrefix(imports),
-        type().toString(imports),
-        name(),
-        parameters()
-            .stream()
-            .map((param) -> param.toString(imports))
-            .collect(Collectors.joining(", ")));
+  /** Appends the same text as {@link #toString(Imports)} to the given builder. */
+  public StringBuilder appendTo(StringBuilder s, Imports imports) {
+    if (imports.methodRenderings() == null) {
+      return render(s, imports);
+    }
+    return s.append(toString(imports));
+  }
+
+  private StringBuilder render(StringBuilder s, Imports imports) {
+    s.append(modifiers().visibility().prefix());
+    if (modifiers().isAbstract()) {
+      s.append("abstract ");
+    }
+    if (!typeParameters().isEmpty()) {
+      s.append('<');
+      for (int i = 0; i < typeParameters().size(); i++) {
+        if (i > 0) {
+          s.append(", ");
+        }
+        typeParameters().get(i).appendTo(s, imports, true);
+      }
+      s.append("> ");
+    }
+    type().appendTo(s, imports).append(' ').append(name()).append('(');
+    return ParameterMetadata.appendAll(s, imports, parameters()).append(')');
   }
 
   public MethodMetadata asAbstract() {
@@ -156,6 +245,10 @@ public abstract class MethodMetadata implements Comparable<MethodMetadata>, Uses
   }
 
   static MethodMetadata fromMethod(ExecutableElement element) {
+    return fromMethod(element, ExtractionOptions.defaults());
+  }
+
+  static MethodMetadata fromMethod(ExecutableElement element, ExtractionOptions options) {
     Preconditions.checkArgument(
         element.getKind() == ElementKind.METHOD, "Element %s is not a method.", element);
     Modifiers modifiers = Modifiers.visibility(Visibility.forElement(element));
@@ -169,7 +262,9 @@ public abstract class MethodMetadata implements Comparable<MethodMetadata>, Uses
             .setName(element.getSimpleName().toString());
 
     for (AnnotationMirror annotationMirror : element.getAnnotationMirrors()) {
-      metadata.addAnnotation(AnnotationMetadata.fromType(annotationMirror));
+      if (options.includesAnnotation(annotationMirror)) {
+        metadata.addAnnotation(AnnotationMetadata.fromType(annotationMirror));
+      }
     }
 
     for (TypeParameterElement typeParam : element.getTypeParameters()) {
@@ -193,12 +288,16 @@ public abstract class MethodMetadata implements Comparable<MethodMetadata>, Uses
 
     public abstract Builder setModifiers(Modifiers modifiers);
 
+    abstract Builder setTypeParameters(ImmutableList<TypeMetadata> typeParameters);
+
     abstract ImmutableList.Builder<TypeMetadata> typeParametersBuilder();
 
     public abstract Builder setName(String name);
 
     public abstract Builder setType(TypeMetadata Type);
 
+    abstract Builder setParameters(ImmutableList<ParameterMetadata> parameters);
+
     abstract ImmutableList.Builder<ParameterMetadata> parametersBuilder();
 
     public Builder addAnnotation(AnnotationMetadata metadata) {
@@ -218,7 +317,13 @@ public abstract class MethodMetadata implements Comparable<MethodMetadata>, Uses
       return this;
     }
 
-    public abstract MethodMetadata build();
+    abstract MethodMetadata autoBuild();
+
+    public MethodMetadata build() {
+      MethodMetadata metadata = autoBuild();
+      metadata.hashCode();
+      return metadata;
+    }
   }
 
   private static class NameIterator implements Iterator<String> {
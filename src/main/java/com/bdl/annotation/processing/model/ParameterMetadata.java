@@ -5,6 +5,7 @@ import com.google.common.collect.ImmutableList;
 
 import java.util.Comparator;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
@@ -36,6 +37,11 @@ public abstract class ParameterMetadata implements UsesTypes {
     return type().getAllTypes();
   }
 
+  @Override
+  public void forEachType(Consumer<? super TypeMetadata> consumer) {
+    type().forEachType(consumer);
+  }
+
   public static ParameterMetadata of(TypeMetadata type, String name) {
     ParameterMetadata metadata = new AutoValue_ParameterMetadata(type);
     metadata.name = name;
@@ -48,6 +54,23 @@ public abstract class ParameterMetadata implements UsesTypes {
   }
 
   public String toString(Imports imports) {
-    return String.format("%s %s", type().toString(imports), name());
+    return appendTo(new StringBuilder(), imports).toString();
+  }
+
+  /** Appends the same text as {@link #toString(Imports)} to the given builder. */
+  public StringBuilder appendTo(StringBuilder s, Imports imports) {
+    return type().appendTo(s, imports).append(' ').append(name());
+  }
+
+  /** Appends the given parameters, comma-separated, to the given builder. */
+  static StringBuilder appendAll(
+      StringBuilder s, Imports imports, ImmutableList<ParameterMetadata> parameters) {
+    for (int i = 0; i < parameters.size(); i++) {
+      if (i > 0) {
+        s.append(", ");
+      }
+      parameters.get(i).appendTo(s, imports);
+    }
+    return s;
   }
 }
@@ -0,0 +1,85 @@
+package com.bdl.annotation.processing.model;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An index from each supertype to the registered classes that inherit from it, directly or
+ * transitively. Processors register the classes they process as they go, and can then list, say,
+ * every processed implementation of an interface with a single lookup.
+ *
+ * <p>Supertypes are identified by fully qualified name, and subtypes are listed in the order they
+ * were registered. Lookups return unmodifiable views, without copying, that reflect later
+ * registrations. Registering a class resolves its supertypes, so, like extraction, it must happen
+ * on the processing thread; instances are not thread-safe.
+ *
+ * @author Ben Leitner
+ */
+public final class SubtypeIndex {
+
+  private final Set<String> registered = new HashSet<>();
+  private final Map<String, Set<ClassMetadata>> directSubtypes = new HashMap<>();
+  private final Map<String, Set<ClassMetadata>> transitiveSubtypes = new HashMap<>();
+
+  /**
+   * Adds the class to the index as a subtype of each of its supertypes. Registering a class again,
+   * or another class with the same name, has no effect.
+   */
+  public SubtypeIndex register(ClassMetadata metadata) {
+    if (!registered.add(metadata.fullyQualifiedPathName())) {
+      return this;
+    }
+    Set<String> seen = new HashSet<>();
+    Deque<ClassMetadata> pending = new ArrayDeque<>();
+    for (InheritanceMetadata inheritance : metadata.inheritances()) {
+      String name = inheritance.type().fullyQualifiedPathName();
+      subtypesOf(directSubtypes, name).add(metadata);
+      if (seen.add(name)) {
+        pending.add(inheritance.classMetadata());
+      }
+    }
+    while (!pending.isEmpty()) {
+      ClassMetadata supertype = pending.remove();
+      subtypesOf(transitiveSubtypes, supertype.fullyQualifiedPathName()).add(metadata);
+      for (InheritanceMetadata inheritance : supertype.inheritances()) {
+        if (seen.add(inheritance.type().fullyQualifiedPathName())) {
+          pending.add(inheritance.classMetadata());
+        }
+      }
+    }
+    return this;
+  }
+
+  private static Set<ClassMetadata> subtypesOf(Map<String, Set<ClassMetadata>> index, String name) {
+    return index.computeIfAbsent(name, key -> new LinkedHashSet<>());
+  }
+
+  /** The registered classes that name the given type in their extends or implements clause. */
+  public Set<ClassMetadata> directSubtypes(String qualifiedName) {
+    return lookup(directSubtypes, qualifiedName);
+  }
+
+  public Set<ClassMetadata> directSubtypes(TypeMetadata type) {
+    return directSubtypes(type.fullyQualifiedPathName());
+  }
+
+  /** The registered classes that inherit from the given type, directly or indirectly. */
+  public Set<ClassMetadata> transitiveSubtypes(String qualifiedName) {
+    return lookup(transitiveSubtypes, qualifiedName);
+  }
+
+  public Set<ClassMetadata> transitiveSubtypes(TypeMetadata type) {
+    return transitiveSubtypes(type.fullyQualifiedPathName());
+  }
+
+  private static Set<ClassMetadata> lookup(Map<String, Set<ClassMetadata>> index, String name) {
+    Set<ClassMetadata> subtypes = index.get(name);
+    return subtypes == null ? Collections.emptySet() : Collections.unmodifiableSet(subtypes);
+  }
+}
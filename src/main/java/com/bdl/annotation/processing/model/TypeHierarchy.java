@@ -0,0 +1,172 @@
+package com.bdl.annotation.processing.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The inheritance graph of a set of classes and all of their supertypes, for subtype, ancestor and
+ * common-supertype queries.
+ *
+ * <p>Each class gets a dense index in topological order, so that every class comes after all of
+ * its supertypes, and keeps the set of its ancestors as a bitset. A subtype test is then a single
+ * bit lookup. Classes are identified by fully qualified name.
+ *
+ * <p>Building a hierarchy resolves the supertypes of the given classes (see {@link
+ * ClassMetadata#resolveHierarchy()}), so it must happen on the processing thread. Once built, a
+ * hierarchy is immutable and may be queried from any thread.
+ *
+ * @author Ben Leitner
+ */
+public final class TypeHierarchy {
+
+  /** The classes, supertypes first. A class's position is its index. */
+  private final ImmutableList<ClassMetadata> classes;
+
+  private final ImmutableMap<String, Integer> indices;
+
+  /** For each index, the indices of the class itself and of all of its supertypes. */
+  private final BitSet[] ancestors;
+
+  private TypeHierarchy(
+      ImmutableList<ClassMetadata> classes,
+      ImmutableMap<String, Integer> indices,
+      BitSet[] ancestors) {
+    this.classes = classes;
+    this.indices = indices;
+    this.ancestors = ancestors;
+  }
+
+  /** Builds the hierarchy of the given classes and all of their supertypes. */
+  public static TypeHierarchy of(Iterable<ClassMetadata> roots) {
+    Builder builder = new Builder();
+    for (ClassMetadata root : roots) {
+      builder.visit(root);
+    }
+    return builder.build();
+  }
+
+  public static TypeHierarchy of(ClassMetadata... roots) {
+    return of(ImmutableList.copyOf(roots));
+  }
+
+  /** Every class in the hierarchy, each one after all of its supertypes. */
+  public ImmutableList<ClassMetadata> inTopologicalOrder() {
+    return classes;
+  }
+
+  public boolean contains(ClassMetadata metadata) {
+    return indices.containsKey(metadata.fullyQualifiedPathName());
+  }
+
+  /**
+   * Whether {@code subtype} is {@code supertype} or inherits from it, directly or indirectly. Both
+   * classes must be in the hierarchy.
+   */
+  public boolean isSubtype(ClassMetadata subtype, ClassMetadata supertype) {
+    return ancestors[index(subtype)].get(index(supertype));
+  }
+
+  /** All classes the given class inherits from, directly or indirectly, supertypes first. */
+  public ImmutableList<ClassMetadata> supertypes(ClassMetadata metadata) {
+    int index = index(metadata);
+    BitSet supertypes = (BitSet) ancestors[index].clone();
+    supertypes.clear(index);
+    return toClasses(supertypes);
+  }
+
+  /**
+   * The minimal common supertypes of the given classes: those classes that all of them are
+   * subtypes of, and that no other such class is a subtype of. Every common supertype is a
+   * supertype of at least one of the results.
+   */
+  public ImmutableList<ClassMetadata> commonSupertypes(Iterable<ClassMetadata> classes) {
+    BitSet common = null;
+    for (ClassMetadata metadata : classes) {
+      BitSet ancestorsOf = ancestors[index(metadata)];
+      if (common == null) {
+        common = (BitSet) ancestorsOf.clone();
+      } else {
+        common.and(ancestorsOf);
+      }
+    }
+    if (common == null) {
+      return ImmutableList.of();
+    }
+    BitSet minimal = (BitSet) common.clone();
+    for (int i = common.nextSetBit(0); i >= 0; i = common.nextSetBit(i + 1)) {
+      // The proper ancestors of a common supertype are not minimal.
+      boolean self = minimal.get(i);
+      minimal.andNot(ancestors[i]);
+      if (self) {
+        minimal.set(i);
+      }
+    }
+    return toClasses(minimal);
+  }
+
+  public ImmutableList<ClassMetadata> commonSupertypes(ClassMetadata... classes) {
+    return commonSupertypes(ImmutableList.copyOf(classes));
+  }
+
+  private int index(ClassMetadata metadata) {
+    Integer index = indices.get(metadata.fullyQualifiedPathName());
+    if (index == null) {
+      throw new IllegalArgumentException(metadata + " is not in the hierarchy.");
+    }
+    return index;
+  }
+
+  private ImmutableList<ClassMetadata> toClasses(BitSet indices) {
+    ImmutableList.Builder<ClassMetadata> result = ImmutableList.builder();
+    for (int i = indices.nextSetBit(0); i >= 0; i = indices.nextSetBit(i + 1)) {
+      result.add(classes.get(i));
+    }
+    return result.build();
+  }
+
+  /** Numbers the classes in depth-first post-order, which puts supertypes first. */
+  private static final class Builder {
+    private final List<ClassMetadata> classes = new ArrayList<>();
+    private final Map<String, Integer> indices = new HashMap<>();
+    private final List<BitSet> ancestors = new ArrayList<>();
+    private final Set<String> visiting = new HashSet<>();
+
+    private int visit(ClassMetadata metadata) {
+      String name = metadata.fullyQualifiedPathName();
+      Integer known = indices.get(name);
+      if (known != null) {
+        return known;
+      }
+      if (!visiting.add(name)) {
+        throw new IllegalStateException("Cyclic inheritance involving " + name);
+      }
+      BitSet ancestorsOf = new BitSet();
+      for (InheritanceMetadata inheritance : metadata.inheritances()) {
+        ancestorsOf.or(ancestors.get(visit(inheritance.classMetadata())));
+      }
+      visiting.remove(name);
+
+      int index = classes.size();
+      ancestorsOf.set(index);
+      classes.add(metadata);
+      indices.put(name, index);
+      ancestors.add(ancestorsOf);
+      return index;
+    }
+
+    private TypeHierarchy build() {
+      return new TypeHierarchy(
+          ImmutableList.copyOf(classes),
+          ImmutableMap.copyOf(indices),
+          ancestors.toArray(new BitSet[0]));
+    }
+  }
+}
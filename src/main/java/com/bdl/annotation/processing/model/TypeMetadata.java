@@ -2,10 +2,16 @@ package com.bdl.annotation.processing.model;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
@@ -24,22 +30,82 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
  * Encapsulation of Metadata information for a Type reference.
  *
+ * <p>Instances are hash-consed: every {@link Builder#build()} returns the canonical instance for
+ * its structure, so equal types share a single object for as long as any of them is reachable.
+ * Names read from the compiler or from reflection are interned as well, and {@link
+ * #fullyQualifiedPathName()} is computed at most once per node. Leaf types and type variables
+ * without bounds hold Guava's shared empty lists rather than lists of their own.
+ *
+ * <p>Instances are immutable and safe to share between threads. Every lazily cached value (the
+ * hash, the path name, {@link #kind()} and {@link #getAllTypes()}) is read once into a local and
+ * is itself immutable, so a racing thread either recomputes it or sees it fully constructed.
+ *
  * @author Ben Leitner
  */
 @AutoValue
 public abstract class TypeMetadata implements UsesTypes, Comparable<TypeMetadata> {
 
+  /** Canonicalizes built instances. Must be initialized before any of the constants below. */
+  private static final Interner<TypeMetadata> INTERNER = Interners.newWeakInterner();
+
+  /** Shares the name strings of converted types, which the compiler hands out as fresh copies. */
+  private static final Interner<String> NAMES = Interners.newWeakInterner();
+
+  /**
+   * Memoized results of {@link #fromType(TypeMirror)}, keyed on mirror identity. Keys are weak, so
+   * entries die with the compiler round that produced them; {@link #clearMirrorCache()} drops them
+   * eagerly.
+   */
+  private static final Cache<TypeMirror, TypeMetadata> MIRRORS_WITH_BOUNDS = newMirrorCache();
+
+  private static final Cache<TypeMirror, TypeMetadata> MIRRORS_WITHOUT_BOUNDS = newMirrorCache();
+
+  private static volatile CacheStats mirrorStatsBaseline = new CacheStats(0, 0, 0, 0, 0, 0);
+
+  /** Results of {@link #from(Type)} for classes, including their type parameters. */
+  private static final ClassValue<TypeMetadata> CLASSES =
+      new ClassValue<TypeMetadata>() {
+        @Override
+        protected TypeMetadata computeValue(Class<?> clazz) {
+          return fromClass(clazz, true);
+        }
+      };
+
+  /** Results of {@link #from(Type)} for raw classes, as used for parameterized types. */
+  private static final ClassValue<TypeMetadata> RAW_CLASSES =
+      new ClassValue<TypeMetadata>() {
+        @Override
+        protected TypeMetadata computeValue(Class<?> clazz) {
+          return fromClass(clazz, false);
+        }
+      };
+
+  private static final int MAX_CACHED_GENERIC_TYPES = 4096;
+
+  /**
+   * Results of {@link #from(Type)} for parameterized types and type variables. Keys are weak, and
+   * so compared by identity, so that the cache does not keep classes or their class loaders alive.
+   * Reflection caches the generic types it hands out on each class, so repeated lookups still hit.
+   */
+  private static final Cache<Type, TypeMetadata> GENERIC_TYPES =
+      CacheBuilder.newBuilder().weakKeys().maximumSize(MAX_CACHED_GENERIC_TYPES).build();
+
   public static final TypeMetadata VOID = builder().setName("void").build();
   public static final TypeMetadata INT = builder().setName("int").build();
   public static final TypeMetadata LONG = builder().setName("long").build();
   public static final TypeMetadata DOUBLE = builder().setName("double").build();
   public static final TypeMetadata BOOLEAN = builder().setName("boolean").build();
+  public static final TypeMetadata FLOAT = builder().setName("float").build();
+  public static final TypeMetadata SHORT = builder().setName("short").build();
+  public static final TypeMetadata BYTE = builder().setName("byte").build();
+  public static final TypeMetadata CHAR = builder().setName("char").build();
   public static final TypeMetadata BOXED_VOID =
       builder().setPackageName("java.lang").setName("Void").build();
   public static final TypeMetadata BOXED_INTEGER =
@@ -50,13 +116,68 @@ public abstract class TypeMetadata implements UsesTypes, Comparable<TypeMetadata
       builder().setPackageName("java.lang").setName("Double").build();
   public static final TypeMetadata BOXED_BOOLEAN =
       builder().setPackageName("java.lang").setName("Boolean").build();
+  public static final TypeMetadata BOXED_FLOAT =
+      builder().setPackageName("java.lang").setName("Float").build();
+  public static final TypeMetadata BOXED_SHORT =
+      builder().setPackageName("java.lang").setName("Short").build();
+  public static final TypeMetadata BOXED_BYTE =
+      builder().setPackageName("java.lang").setName("Byte").build();
+  public static final TypeMetadata BOXED_CHARACTER =
+      builder().setPackageName("java.lang").setName("Character").build();
   public static final TypeMetadata STRING =
       builder().setPackageName("java.lang").setName("String").build();
   public static final TypeMetadata OBJECT =
       builder().setPackageName("java.lang").setName("Object").build();
   public static final TypeMetadata CLASS =
       builder().setPackageName("java.lang").setName("Class").addParam(simpleTypeParam("?")).build();
+
+  /** Primitive types (including {@code void}) to their boxed counterparts. */
+  private static final ImmutableBiMap<TypeMetadata, TypeMetadata> BOXES =
+      ImmutableBiMap.<TypeMetadata, TypeMetadata>builder()
+          .put(VOID, BOXED_VOID)
+          .put(BOOLEAN, BOXED_BOOLEAN)
+          .put(BYTE, BOXED_BYTE)
+          .put(SHORT, BOXED_SHORT)
+          .put(CHAR, BOXED_CHARACTER)
+          .put(INT, BOXED_INTEGER)
+          .put(LONG, BOXED_LONG)
+          .put(FLOAT, BOXED_FLOAT)
+          .put(DOUBLE, BOXED_DOUBLE)
+          .build();
+
+  /** Widths in bits of the primitive types. */
+  private static final ImmutableMap<TypeMetadata, Integer> PRIMITIVE_WIDTHS =
+      ImmutableMap.<TypeMetadata, Integer>builder()
+          .put(VOID, 0)
+          .put(BOOLEAN, 1)
+          .put(BYTE, Byte.SIZE)
+          .put(SHORT, Short.SIZE)
+          .put(CHAR, Character.SIZE)
+          .put(INT, Integer.SIZE)
+          .put(LONG, Long.SIZE)
+          .put(FLOAT, Float.SIZE)
+          .put(DOUBLE, Double.SIZE)
+          .build();
+
+  /** Source literals for the default values of the non-void primitive types. */
+  private static final ImmutableMap<TypeMetadata, String> PRIMITIVE_DEFAULTS =
+      ImmutableMap.<TypeMetadata, String>builder()
+          .put(BOOLEAN, "false")
+          .put(BYTE, "(byte) 0")
+          .put(SHORT, "(short) 0")
+          .put(CHAR, "'\\u0000'")
+          .put(INT, "0")
+          .put(LONG, "0L")
+          .put(FLOAT, "0.0f")
+          .put(DOUBLE, "0.0")
+          .build();
   private ImmutableSet<TypeMetadata> imports;
+  private ImmutableSet<String> typeVariables;
+  private String fullyQualifiedPathName;
+  private Kind kind;
+  private TypeMetadata rawType;
+  /** Structural hash, filled in by {@link Builder#build()}. Zero means not yet computed. */
+  private int hash;
 
   /** The package in which the type lives. */
   public abstract String packageName();
@@ -88,6 +209,43 @@ public abstract class TypeMetadata implements UsesTypes, Comparable<TypeMetadata
         .result();
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof TypeMetadata)) {
+      return false;
+    }
+    TypeMetadata that = (TypeMetadata) o;
+    return hashCode() == that.hashCode()
+        && isTypeParameter() == that.isTypeParameter()
+        && arrayDepth() == that.arrayDepth()
+        && name().equals(that.name())
+        && packageName().equals(that.packageName())
+        && outerClassNames().equals(that.outerClassNames())
+        && params().equals(that.params())
+        && bounds().equals(that.bounds());
+  }
+
+  @Override
+  public int hashCode() {
+    int h = hash;
+    if (h == 0) {
+      h =
+          Objects.hash(
+              packageName(),
+              isTypeParameter(),
+              arrayDepth(),
+              outerClassNames(),
+              name(),
+              params(),
+              bounds());
+      hash = h;
+    }
+    return h;
+  }
+
   public boolean isArray() {
     return arrayDepth() > 0;
   }
@@ -96,8 +254,17 @@ public abstract class TypeMetadata implements UsesTypes, Comparable<TypeMetadata
     return packageName().isEmpty() ? "" : packageName() + ".";
   }
 
+  /**
+   * The outer class names, outermost first, each followed by a dot. Cut from {@link
+   * #fullyQualifiedPathName()} on each call rather than stored separately.
+   */
   public String nestingPrefix() {
-    return nestingPrefix(".");
+    if (outerClassNames().isEmpty()) {
+      return "";
+    }
+    String pathName = fullyQualifiedPathName();
+    int start = packageName().isEmpty() ? 0 : packageName().length() + 1;
+    return pathName.substring(start, pathName.length() - name().length());
   }
 
   public String nestingPrefix(String delimiter) {
@@ -106,7 +273,15 @@ public abstract class TypeMetadata implements UsesTypes, Comparable<TypeMetadata
   }
 
   public String fullyQualifiedPathName() {
-    return String.format("%s%s%s", packagePrefix(), nestingPrefix(), name());
+    if (packageName().isEmpty() && outerClassNames().isEmpty()) {
+      return name();
+    }
+    String pathName = fullyQualifiedPathName;
+    if (pathName == null) {
+      pathName = packagePrefix() + nestingPrefix(".") + name();
+      fullyQualifiedPathName = pathName;
+    }
+    return pathName;
   }
 
   public String toString(Imports imports) {
@@ -114,39 +289,74 @@ public abstract class TypeMetadata implements UsesTypes, Comparable<TypeMetadata
   }
 
   public String toString(Imports imports, boolean withBounds) {
-    StringBuilder s = new StringBuilder();
+    Cache<TypeMetadata, String> renderings = imports.typeRenderings(withBounds);
+    if (renderings == null) {
+      return render(new StringBuilder(), imports, withBounds).toString();
+    }
+    String rendered = renderings.getIfPresent(this);
+    if (rendered == null) {
+      rendered = render(new StringBuilder(), imports, withBounds).toString();
+      renderings.put(this, rendered);
+    }
+    return rendered;
+  }
+
+  /** Appends the same text as {@link #toString(Imports)} to the given builder. */
+  public StringBuilder appendTo(StringBuilder s, Imports imports) {
+    return appendTo(s, imports, false);
+  }
+
+  /**
+   * Appends the same text as {@link #toString(Imports, boolean)} to the given builder, without
+   * building any intermediate strings unless the imports have a {@linkplain
+   * Imports#withRenderingCache(int) rendering cache}.
+   */
+  public StringBuilder appendTo(StringBuilder s, Imports imports, boolean withBounds) {
+    if (imports.typeRenderings(withBounds) == null) {
+      return render(s, imports, withBounds);
+    }
+    return s.append(toString(imports, withBounds));
+  }
+
+  private StringBuilder render(StringBuilder s, Imports imports, boolean withBounds) {
     Imports.ReferenceType referenceType = imports.reference(this);
     switch (referenceType) {
       case FULLY_QUALIFIED_PATH_NAME:
-        s.append(packagePrefix());
+        if (!packageName().isEmpty()) {
+          s.append(packageName()).append('.');
+        }
         // fallthrough
       case NESTED_NAME:
-        s.append(nestingPrefix());
+        for (int i = outerClassNames().size() - 1; i >= 0; i--) {
+          s.append(outerClassNames().get(i)).append('.');
+        }
         // fallthrough
       case NAME_ONLY:
         s.append(name());
     }
     if (!params().isEmpty()) {
-      s.append("<");
-      s.append(
-          params()
-              .stream()
-              .map((type) -> type.toString(imports, withBounds))
-              .collect(Collectors.joining(", ")));
-      s.append(">");
+      s.append('<');
+      for (int i = 0; i < params().size(); i++) {
+        if (i > 0) {
+          s.append(", ");
+        }
+        params().get(i).appendTo(s, imports, withBounds);
+      }
+      s.append('>');
     }
     if (withBounds && !bounds().isEmpty()) {
       s.append(" extends ");
-      s.append(
-          bounds()
-              .stream()
-              .map((type) -> type.toString(imports, false)) // do not recurse on bounds
-              .collect(Collectors.joining(" & ")));
+      for (int i = 0; i < bounds().size(); i++) {
+        if (i > 0) {
+          s.append(" & ");
+        }
+        bounds().get(i).appendTo(s, imports, false); // do not recurse on bounds
+      }
     }
     for (int i = 0; i < arrayDepth(); i++) {
       s.append("[]");
     }
-    return s.toString();
+    return s;
   }
 
   public TypeMetadata arrayOf() {
@@ -155,7 +365,8 @@ public abstract class TypeMetadata implements UsesTypes, Comparable<TypeMetadata
 
   @Override
   public Set<TypeMetadata> getAllTypes() {
-    if (imports == null) {
+    ImmutableSet<TypeMetadata> types = imports;
+    if (types == null) {
       ImmutableSet.Builder<TypeMetadata> allImports = ImmutableSet.builder();
       if (!isTypeParameter()) {
         // TODO: Remove Nesting Prefix and force qualified class names for inner classes?
@@ -168,13 +379,63 @@ public abstract class TypeMetadata implements UsesTypes, Comparable<TypeMetadata
         allImports.addAll(bound.getAllTypes());
       }
 
-      imports = allImports.build();
+      types = allImports.build();
+      imports = types;
     }
-    return imports;
+    return types;
+  }
+
+  /** Whether this is a primitive type or {@code void}, as for {@link Class#isPrimitive()}. */
+  public boolean isPrimitive() {
+    return BOXES.containsKey(this);
+  }
+
+  /** The boxed counterpart of a primitive type; any other type is returned unchanged. */
+  public TypeMetadata boxed() {
+    TypeMetadata boxed = BOXES.get(this);
+    return boxed == null ? this : boxed;
+  }
+
+  /** The primitive counterpart of a boxed type; any other type is returned unchanged. */
+  public TypeMetadata unboxed() {
+    TypeMetadata unboxed = BOXES.inverse().get(this);
+    return unboxed == null ? this : unboxed;
+  }
+
+  /**
+   * The width in bits of a primitive type. {@code boolean} is reported as 1 and {@code void} as 0.
+   *
+   * @throws IllegalStateException if this type is not primitive.
+   */
+  public int primitiveWidth() {
+    Integer width = PRIMITIVE_WIDTHS.get(this);
+    Preconditions.checkState(width != null, "Not a primitive type: %s", this);
+    return width;
+  }
+
+  /**
+   * The source literal for the default value of a variable of this type: {@code "null"} for
+   * reference types and e.g. {@code "0L"} or {@code "false"} for primitives.
+   *
+   * @throws IllegalStateException if this type is {@code void}.
+   */
+  public String defaultValueLiteral() {
+    Preconditions.checkState(this != VOID, "void has no default value.");
+    String literal = PRIMITIVE_DEFAULTS.get(this);
+    return literal == null ? "null" : literal;
   }
 
   public Kind kind() {
-    switch (packagePrefix() + nestingPrefix() + name()) {
+    Kind result = kind;
+    if (result == null) {
+      result = classify();
+      kind = result;
+    }
+    return result;
+  }
+
+  private Kind classify() {
+    switch (fullyQualifiedPathName()) {
       case "java.lang.Integer":
       case "java.lang.Long":
       case "java.lang.Double":
@@ -214,11 +475,13 @@ public abstract class TypeMetadata implements UsesTypes, Comparable<TypeMetadata
 
   TypeMetadata convertTypeParams(List<TypeMetadata> newParams) {
     if (!isTypeParameter()) {
-      Preconditions.checkArgument(
-          newParams.size() == params().size(),
-          "Cannot convert %s to using type params <%s>, the number of params does not match.",
-          toString(Imports.empty()),
-          newParams.stream().map(TypeMetadata::name).collect(Collectors.joining(", ")));
+      if (newParams.size() != params().size()) {
+        throw new IllegalArgumentException(
+            String.format(
+                "Cannot convert %s to using type params <%s>, the number of params does not match.",
+                this,
+                newParams.stream().map(TypeMetadata::name).collect(Collectors.joining(", "))));
+      }
       ImmutableMap.Builder<String, String> paramNameMapBuilder = ImmutableMap.builder();
       int i = 0;
       for (TypeMetadata param : params()) {
@@ -227,43 +490,59 @@ public abstract class TypeMetadata implements UsesTypes, Comparable<TypeMetadata
       }
       return convertTypeParams(paramNameMapBuilder.build());
     } else {
-      Preconditions.checkArgument(
-          newParams.size() == 1,
-          "Cannot convert %s to type params <%s>, exactly 1 type parameter is required.",
-          toString(Imports.empty()),
-          newParams.stream().map(TypeMetadata::name).collect(Collectors.joining(", ")));
+      if (newParams.size() != 1) {
+        throw new IllegalArgumentException(
+            String.format(
+                "Cannot convert %s to type params <%s>, exactly 1 type parameter is required.",
+                this,
+                newParams.stream().map(TypeMetadata::name).collect(Collectors.joining(", "))));
+      }
       return convertTypeParams(ImmutableMap.of(name(), newParams.get(0).name()));
     }
   }
 
   TypeMetadata convertTypeParams(Map<String, String> paramNameMap) {
-    Builder builder = rawType().toBuilder();
+    return TypeSubstitution.of(paramNameMap).apply(this);
+  }
 
-    if (!isTypeParameter()) {
+  /** The names of all type variables mentioned anywhere in this type, including itself. */
+  ImmutableSet<String> typeVariables() {
+    ImmutableSet<String> variables = typeVariables;
+    if (variables == null) {
+      ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+      if (isTypeParameter()) {
+        builder.add(name());
+      }
       for (TypeMetadata param : params()) {
-        builder.addParam(param.convertTypeParams(paramNameMap));
+        builder.addAll(param.typeVariables());
       }
-      return builder.build();
-    }
-
-    if (paramNameMap.containsKey(name())) {
-      builder.setName(paramNameMap.get(name()));
-    }
-    for (TypeMetadata bound : bounds()) {
-      builder.addBound(bound.convertTypeParams(paramNameMap));
+      for (TypeMetadata bound : bounds()) {
+        builder.addAll(bound.typeVariables());
+      }
+      variables = builder.build();
+      typeVariables = variables;
     }
-    return builder.build();
+    return variables;
   }
 
   /**
    * If {@code this} is a type parameter, removes any bounds, if present. Otherwise, removes any
    * type parameters, if present.
+   *
+   * <p>The result is interned and cached, so every type has the same raw type instance as any
+   * other type that differs from it only in its parameters or bounds.
    */
   public TypeMetadata rawType() {
-    if (isTypeParameter()) {
-      return bounds().isEmpty() ? this : toBuilder().setBounds(ImmutableList.of()).build();
+    TypeMetadata raw = rawType;
+    if (raw == null) {
+      if (isTypeParameter()) {
+        raw = bounds().isEmpty() ? this : toBuilder().setBounds(ImmutableList.of()).build();
+      } else {
+        raw = params().isEmpty() ? this : toBuilder().setParams(ImmutableList.of()).build();
+      }
+      rawType = raw;
     }
-    return params().isEmpty() ? this : toBuilder().setParams(ImmutableList.of()).build();
+    return raw;
   }
 
   @Override
@@ -298,11 +577,44 @@ public abstract class TypeMetadata implements UsesTypes, Comparable<TypeMetadata
     throw new IllegalArgumentException("Cannot determine name for type: " + type);
   }
 
+  private static Cache<TypeMirror, TypeMetadata> newMirrorCache() {
+    return CacheBuilder.newBuilder().weakKeys().recordStats().build();
+  }
+
+  /**
+   * Clears the memoized {@link #fromType(TypeMirror)} conversions. Processors should call this at
+   * the start of each round.
+   */
+  public static void clearMirrorCache() {
+    MIRRORS_WITH_BOUNDS.invalidateAll();
+    MIRRORS_WITHOUT_BOUNDS.invalidateAll();
+    mirrorStatsBaseline = MIRRORS_WITH_BOUNDS.stats().plus(MIRRORS_WITHOUT_BOUNDS.stats());
+  }
+
+  /** Hit and miss counts of the {@link #fromType(TypeMirror)} cache since it was last cleared. */
+  public static CacheStats mirrorCacheStats() {
+    return MIRRORS_WITH_BOUNDS
+        .stats()
+        .plus(MIRRORS_WITHOUT_BOUNDS.stats())
+        .minus(mirrorStatsBaseline);
+  }
+
   private static TypeMetadata fromType(TypeMirror type, boolean withBounds) {
+    Cache<TypeMirror, TypeMetadata> cache =
+        withBounds ? MIRRORS_WITH_BOUNDS : MIRRORS_WITHOUT_BOUNDS;
+    TypeMetadata metadata = cache.getIfPresent(type);
+    if (metadata == null) {
+      metadata = convert(type, withBounds);
+      cache.put(type, metadata);
+    }
+    return metadata;
+  }
+
+  private static TypeMetadata convert(TypeMirror type, boolean withBounds) {
     if (type.getKind() == TypeKind.ARRAY) {
       return fromType(((ArrayType) type).getComponentType(), withBounds).arrayOf();
     }
-    Builder builder = builder().setName(getSimpleName(type));
+    Builder builder = builder().setName(NAMES.intern(getSimpleName(type)));
 
     if (type.getKind() == TypeKind.WILDCARD) {
       builder.setIsTypeParameter(true);
@@ -334,11 +646,12 @@ public abstract class TypeMetadata implements UsesTypes, Comparable<TypeMetadata
       }
       Element enclosingElement = ((DeclaredType) type).asElement().getEnclosingElement();
       while (enclosingElement.getKind() != ElementKind.PACKAGE) {
-        builder.addOuterClass(enclosingElement.getSimpleName().toString());
+        builder.addOuterClass(NAMES.intern(enclosingElement.getSimpleName().toString()));
         enclosingElement = enclosingElement.getEnclosingElement();
       }
 
-      builder.setPackageName(((QualifiedNameable) enclosingElement).getQualifiedName().toString());
+      builder.setPackageName(
+          NAMES.intern(((QualifiedNameable) enclosingElement).getQualifiedName().toString()));
     }
     return builder.build();
   }
@@ -360,6 +673,21 @@ public abstract class TypeMetadata implements UsesTypes, Comparable<TypeMetadata
   }
 
   private static TypeMetadata from(Type type, boolean includeParams) {
+    if (type instanceof Class) {
+      return includeParams ? CLASSES.get((Class<?>) type) : RAW_CLASSES.get((Class<?>) type);
+    }
+    if (!includeParams) {
+      return convert(type, false);
+    }
+    TypeMetadata metadata = GENERIC_TYPES.getIfPresent(type);
+    if (metadata == null) {
+      metadata = convert(type, true);
+      GENERIC_TYPES.put(type, metadata);
+    }
+    return metadata;
+  }
+
+  private static TypeMetadata convert(Type type, boolean includeParams) {
     if (type instanceof java.lang.reflect.TypeVariable) {
       java.lang.reflect.TypeVariable typeVar = (java.lang.reflect.TypeVariable) type;
       Builder metadata = builder().setIsTypeParameter(true).setName(typeVar.getName());
@@ -382,15 +710,17 @@ public abstract class TypeMetadata implements UsesTypes, Comparable<TypeMetadata
       }
       return metadata.build();
     }
-    Preconditions.checkArgument(type instanceof Class);
-    Class<?> clazz = (Class<?>) type;
+    throw new IllegalArgumentException("Cannot convert type: " + type);
+  }
+
+  private static TypeMetadata fromClass(Class<?> clazz, boolean includeParams) {
     Builder metadata =
         TypeMetadata.builder()
-            .setPackageName(clazz.getPackage().getName())
-            .setName(clazz.getSimpleName());
+            .setPackageName(NAMES.intern(clazz.getPackage().getName()))
+            .setName(NAMES.intern(clazz.getSimpleName()));
     Class<?> enclosing = clazz.getEnclosingClass();
     while (enclosing != null) {
-      metadata.addOuterClass(enclosing.getSimpleName());
+      metadata.addOuterClass(NAMES.intern(enclosing.getSimpleName()));
       enclosing = enclosing.getEnclosingClass();
     }
     if (includeParams) {
@@ -402,6 +732,30 @@ public abstract class TypeMetadata implements UsesTypes, Comparable<TypeMetadata
     return metadata.build();
   }
 
+  /** Creates a non-generic, top-level type. Use an empty package name for primitives. */
+  public static TypeMetadata of(String packageName, String name) {
+    Preconditions.checkArgument(!name.isEmpty(), "A type name is required.");
+    return builder().setPackageName(packageName).setName(name).build();
+  }
+
+  /** Creates the parameterization of a raw type with the given type arguments. */
+  public static TypeMetadata parameterized(TypeMetadata rawType, TypeMetadata... typeArguments) {
+    if (rawType.isTypeParameter() || !rawType.params().isEmpty()) {
+      throw new IllegalArgumentException("Not a raw type: " + rawType);
+    }
+    return rawType.toBuilder().setParams(ImmutableList.copyOf(typeArguments)).build();
+  }
+
+  /** Creates a type variable with the given bounds. */
+  public static TypeMetadata typeVar(String name, TypeMetadata... bounds) {
+    Preconditions.checkArgument(!name.isEmpty(), "A type variable name is required.");
+    return builder()
+        .setIsTypeParameter(true)
+        .setName(name)
+        .setBounds(ImmutableList.copyOf(bounds))
+        .build();
+  }
+
   public static TypeMetadata simpleTypeParam(String paramName) {
     return builder().setIsTypeParameter(true).setName(paramName).build();
   }
@@ -463,26 +817,25 @@ public abstract class TypeMetadata implements UsesTypes, Comparable<TypeMetadata
 
     public TypeMetadata build() {
       TypeMetadata metadata = autoBuild();
+      // The metadata itself is passed as the message argument so that it is only rendered if a
+      // check fails.
       if (metadata.isTypeParameter()) {
         Preconditions.checkState(
-            metadata.params().isEmpty(),
-            "Type parameters given for type-parameter: %s",
-            metadata.toString(Imports.empty()));
+            metadata.params().isEmpty(), "Type parameters given for type-parameter: %s", metadata);
         Preconditions.checkState(
             metadata.outerClassNames().isEmpty(),
             "Nesting classes given type-parameter: %s",
-            metadata.toString(Imports.empty()));
+            metadata);
         Preconditions.checkState(
             metadata.packageName().isEmpty(),
             "Nonempty package given for type-parameter: %s",
-            metadata.toString(Imports.empty()));
+            metadata);
       } else {
         Preconditions.checkState(
-            metadata.bounds().isEmpty(),
-            "Bounds given for non-type-parameter: %s",
-            metadata.toString(Imports.empty()));
+            metadata.bounds().isEmpty(), "Bounds given for non-type-parameter: %s", metadata);
       }
-      return metadata;
+      metadata.hashCode();
+      return INTERNER.intern(metadata);
     }
   }
 }
@@ -0,0 +1,388 @@
+package com.bdl.annotation.processing.model;
+
+import com.google.common.collect.ImmutableSet;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An immutable set of types, stored over dense type IDs, so that unions, intersections and
+ * membership tests work on IDs rather than by hashing types.
+ *
+ * <p>IDs are assigned within a compilation: the registry that numbers types is replaced by {@link
+ * ClassMetadata#clearCache()}, so the types it holds, and the range of IDs, do not grow across
+ * compilations in a long-lived JVM. Each set keeps the registry it was built with. Unions and
+ * intersections are always numbered by the current registry, so a set from an earlier compilation
+ * is renumbered when combined, and the result equals the same set built afresh. Membership tests
+ * only look up IDs, and never number new types. Sets from different compilations are never equal
+ * unless both are empty.
+ *
+ * <p>A set is stored as a bitset over its IDs, or, when it holds few types compared to its highest
+ * ID, as a sorted array of IDs, so that a small set costs little however many types have been
+ * numbered.
+ *
+ * <p>Instances are safe to share between threads. Iteration is in order of ID, which is the order
+ * in which the types were first registered.
+ *
+ * @author Ben Leitner
+ */
+public final class TypeSet implements Iterable<TypeMetadata> {
+
+  private static final TypeSet EMPTY = new TypeSet(null, new long[0], null);
+
+  /** The registry of the current compilation. */
+  private static volatile Registry registry = new Registry();
+
+  /** The registry the IDs come from, or null for the empty set. */
+  @Nullable private final Registry ids;
+
+  /** The bits, with no trailing zero words, or null if the set is sparse. */
+  @Nullable private final long[] words;
+
+  /** The IDs in ascending order, or null if the set is a bitset. */
+  @Nullable private final int[] sparse;
+
+  private TypeSet(@Nullable Registry ids, @Nullable long[] words, @Nullable int[] sparse) {
+    this.ids = ids;
+    this.words = words;
+    this.sparse = sparse;
+  }
+
+  public static TypeSet empty() {
+    return EMPTY;
+  }
+
+  public static TypeSet of(TypeMetadata... types) {
+    return of(Arrays.asList(types));
+  }
+
+  public static TypeSet of(Iterable<TypeMetadata> types) {
+    Bits bits = new Bits(registry);
+    for (TypeMetadata type : types) {
+      bits.add(type);
+    }
+    return bits.build();
+  }
+
+  /** The set of the types of {@link UsesTypes#getAllTypes()}, collected in one pass. */
+  public static TypeSet of(UsesTypes usesTypes) {
+    Bits bits = new Bits(registry);
+    usesTypes.forEachType(bits::add);
+    return bits.build();
+  }
+
+  /** Starts numbering types afresh. Called when a compilation's metadata is dropped. */
+  static void clearIds() {
+    registry = new Registry();
+  }
+
+  public boolean contains(TypeMetadata type) {
+    if (ids == null) {
+      return false;
+    }
+    Integer id = ids.idIfPresent(type);
+    return id != null && get(id);
+  }
+
+  private boolean get(int id) {
+    if (sparse != null) {
+      return Arrays.binarySearch(sparse, id) >= 0;
+    }
+    int word = id >>> 6;
+    return word < words.length && (words[word] & (1L << id)) != 0;
+  }
+
+  public boolean containsAll(TypeSet that) {
+    if (that.isEmpty()) {
+      return true;
+    }
+    if (isEmpty()) {
+      return false;
+    }
+    if (ids != that.ids) {
+      for (TypeMetadata type : that) {
+        if (!contains(type)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (words != null && that.words != null) {
+      if (that.words.length > words.length) {
+        return false;
+      }
+      for (int i = 0; i < that.words.length; i++) {
+        if ((that.words[i] & ~words[i]) != 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+    for (int id : that.idArray()) {
+      if (!get(id)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public TypeSet union(TypeSet that) {
+    Registry current = registry;
+    if (!isNumberedBy(current) || !that.isNumberedBy(current)) {
+      return numberedBy(current).union(that.numberedBy(current));
+    }
+    if (isEmpty()) {
+      return that;
+    }
+    if (containsAll(that)) {
+      return this;
+    }
+    if (that.containsAll(this)) {
+      return that;
+    }
+    if (words != null && that.words != null) {
+      long[] union = Arrays.copyOf(words, Math.max(words.length, that.words.length));
+      for (int i = 0; i < that.words.length; i++) {
+        union[i] |= that.words[i];
+      }
+      return create(ids, union);
+    }
+    Bits bits = new Bits(ids);
+    bits.setAll(idArray());
+    bits.setAll(that.idArray());
+    return bits.build();
+  }
+
+  public TypeSet intersection(TypeSet that) {
+    if (isEmpty() || that.isEmpty()) {
+      return EMPTY;
+    }
+    Registry current = registry;
+    if (ids != current || that.ids != current) {
+      // Only the types in the result are numbered by the current registry.
+      TypeSet smaller = size() <= that.size() ? this : that;
+      TypeSet larger = smaller == this ? that : this;
+      Bits bits = new Bits(current);
+      for (TypeMetadata type : smaller) {
+        if (larger.contains(type)) {
+          bits.add(type);
+        }
+      }
+      return bits.build();
+    }
+    if (words != null && that.words != null) {
+      long[] intersection = new long[Math.min(words.length, that.words.length)];
+      for (int i = 0; i < intersection.length; i++) {
+        intersection[i] = words[i] & that.words[i];
+      }
+      return create(ids, intersection);
+    }
+    TypeSet smaller = size() <= that.size() ? this : that;
+    TypeSet larger = smaller == this ? that : this;
+    Bits bits = new Bits(ids);
+    for (int id : smaller.idArray()) {
+      if (larger.get(id)) {
+        bits.set(id);
+      }
+    }
+    return bits.build();
+  }
+
+  public int size() {
+    if (sparse != null) {
+      return sparse.length;
+    }
+    int size = 0;
+    for (long word : words) {
+      size += Long.bitCount(word);
+    }
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return ids == null;
+  }
+
+  @Override
+  public Iterator<TypeMetadata> iterator() {
+    int[] idArray = idArray();
+    return new Iterator<TypeMetadata>() {
+      private int next;
+
+      @Override
+      public boolean hasNext() {
+        return next < idArray.length;
+      }
+
+      @Override
+      public TypeMetadata next() {
+        if (next == idArray.length) {
+          throw new NoSuchElementException();
+        }
+        return ids.type(idArray[next++]);
+      }
+    };
+  }
+
+  /** The IDs in the set, in ascending order. */
+  private int[] idArray() {
+    if (sparse != null) {
+      return sparse;
+    }
+    int[] result = new int[size()];
+    int n = 0;
+    for (int i = 0; i < words.length; i++) {
+      for (long word = words[i]; word != 0; word &= word - 1) {
+        result[n++] = i * 64 + Long.numberOfTrailingZeros(word);
+      }
+    }
+    return result;
+  }
+
+  private boolean isNumberedBy(Registry target) {
+    return isEmpty() || ids == target;
+  }
+
+  /** This set, with its types numbered by the given registry. */
+  private TypeSet numberedBy(Registry target) {
+    if (isNumberedBy(target)) {
+      return this;
+    }
+    Bits bits = new Bits(target);
+    for (TypeMetadata type : this) {
+      bits.add(type);
+    }
+    return bits.build();
+  }
+
+  public ImmutableSet<TypeMetadata> toSet() {
+    return ImmutableSet.copyOf(this);
+  }
+
+  /** Each set has a single representation, so sets from the same compilation compare directly. */
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof TypeSet)) {
+      return false;
+    }
+    TypeSet that = (TypeSet) o;
+    return ids == that.ids
+        && Arrays.equals(words, that.words)
+        && Arrays.equals(sparse, that.sparse);
+  }
+
+  @Override
+  public int hashCode() {
+    return sparse != null ? Arrays.hashCode(sparse) : Arrays.hashCode(words);
+  }
+
+  @Override
+  public String toString() {
+    return toSet().toString();
+  }
+
+  /**
+   * The set of the given bits, stored as a bitset unless it has fewer types than words, in which
+   * case the sorted IDs take less than half the space.
+   */
+  private static TypeSet create(Registry ids, long[] words) {
+    int length = words.length;
+    int size = 0;
+    while (length > 0 && words[length - 1] == 0) {
+      length--;
+    }
+    for (int i = 0; i < length; i++) {
+      size += Long.bitCount(words[i]);
+    }
+    if (size == 0) {
+      return EMPTY;
+    }
+    if (size < length) {
+      int[] sparse = new int[size];
+      int n = 0;
+      for (int i = 0; i < length; i++) {
+        for (long word = words[i]; word != 0; word &= word - 1) {
+          sparse[n++] = i * 64 + Long.numberOfTrailingZeros(word);
+        }
+      }
+      return new TypeSet(ids, null, sparse);
+    }
+    return new TypeSet(ids, length == words.length ? words : Arrays.copyOf(words, length), null);
+  }
+
+  /**
+   * Assigns each distinct type the next ID the first time it is put in a set, and holds on to
+   * every type it has numbered for as long as any set built with it is reachable.
+   */
+  private static final class Registry {
+    private final ConcurrentMap<TypeMetadata, Integer> idsByType = new ConcurrentHashMap<>();
+
+    /** The type with each ID. Guarded by itself. */
+    private final List<TypeMetadata> types = new ArrayList<>();
+
+    private int id(TypeMetadata type) {
+      Integer id = idsByType.get(type);
+      if (id != null) {
+        return id;
+      }
+      synchronized (types) {
+        id = idsByType.get(type);
+        if (id == null) {
+          id = types.size();
+          types.add(type);
+          idsByType.put(type, id);
+        }
+        return id;
+      }
+    }
+
+    @Nullable
+    private Integer idIfPresent(TypeMetadata type) {
+      return idsByType.get(type);
+    }
+
+    private TypeMetadata type(int id) {
+      synchronized (types) {
+        return types.get(id);
+      }
+    }
+  }
+
+  /** A growable bitset for building a set. */
+  private static final class Bits {
+    private final Registry ids;
+    private long[] words = new long[4];
+
+    private Bits(Registry ids) {
+      this.ids = ids;
+    }
+
+    private void add(TypeMetadata type) {
+      set(ids.id(type));
+    }
+
+    private void set(int id) {
+      int word = id >>> 6;
+      if (word >= words.length) {
+        words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+      }
+      words[word] |= 1L << id;
+    }
+
+    private void setAll(int[] ids) {
+      for (int id : ids) {
+        set(id);
+      }
+    }
+
+    private TypeSet build() {
+      return create(ids, words);
+    }
+  }
+}
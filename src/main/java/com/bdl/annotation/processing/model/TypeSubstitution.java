@@ -0,0 +1,151 @@
+package com.bdl.annotation.processing.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A simultaneous renaming of type parameters, applied to {@link TypeMetadata} trees.
+ *
+ * <p>Application shares structure: any subtree that mentions none of the renamed type variables
+ * is returned as the identical instance, so only the nodes that actually change are rebuilt.
+ *
+ * @author Ben Leitner
+ */
+final class TypeSubstitution {
+
+  private static final TypeSubstitution IDENTITY = new TypeSubstitution(ImmutableMap.of());
+
+  private final ImmutableMap<String, String> names;
+
+  private TypeSubstitution(ImmutableMap<String, String> names) {
+    this.names = names;
+  }
+
+  static TypeSubstitution identity() {
+    return IDENTITY;
+  }
+
+  /** Creates a substitution renaming each key of the map to its value. */
+  static TypeSubstitution of(Map<String, String> names) {
+    ImmutableMap.Builder<String, String> renames = ImmutableMap.builder();
+    for (Map.Entry<String, String> entry : names.entrySet()) {
+      if (!entry.getKey().equals(entry.getValue())) {
+        renames.put(entry);
+      }
+    }
+    ImmutableMap<String, String> map = renames.build();
+    return map.isEmpty() ? IDENTITY : new TypeSubstitution(map);
+  }
+
+  /** The renamings made by this substitution. Names that map to themselves are omitted. */
+  ImmutableMap<String, String> asMap() {
+    return names;
+  }
+
+  boolean isIdentity() {
+    return names.isEmpty();
+  }
+
+  /**
+   * Returns the substitution equivalent to applying {@code this} and then {@code next}, i.e. such
+   * that {@code a.andThen(b).apply(t)} equals {@code b.apply(a.apply(t))}.
+   */
+  TypeSubstitution andThen(TypeSubstitution next) {
+    if (next.isIdentity()) {
+      return this;
+    }
+    if (isIdentity()) {
+      return next;
+    }
+    ImmutableMap.Builder<String, String> composed = ImmutableMap.builder();
+    for (Map.Entry<String, String> entry : names.entrySet()) {
+      composed.put(entry.getKey(), next.rename(entry.getValue()));
+    }
+    for (Map.Entry<String, String> entry : next.names.entrySet()) {
+      if (!names.containsKey(entry.getKey())) {
+        composed.put(entry);
+      }
+    }
+    return of(composed.build());
+  }
+
+  /**
+   * Returns the substitution that renames each of the given type parameters as applying {@code
+   * this} and then {@code next} would, and leaves every other name alone. Unlike {@link
+   * #andThen(TypeSubstitution)}, names that {@code next} binds are not captured unless they are
+   * among the parameters, which is what composing along an inheritance path requires.
+   */
+  TypeSubstitution andThen(TypeSubstitution next, List<TypeMetadata> params) {
+    ImmutableMap.Builder<String, String> composed = ImmutableMap.builder();
+    for (TypeMetadata param : params) {
+      composed.put(param.name(), next.rename(rename(param.name())));
+    }
+    return of(composed.build());
+  }
+
+  String rename(String name) {
+    String renamed = names.get(name);
+    return renamed == null ? name : renamed;
+  }
+
+  /** Whether applying this substitution to the type would change it. */
+  boolean affects(TypeMetadata type) {
+    if (isIdentity()) {
+      return false;
+    }
+    for (String variable : type.typeVariables()) {
+      if (names.containsKey(variable)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  TypeMetadata apply(TypeMetadata type) {
+    if (!affects(type)) {
+      return type;
+    }
+    TypeMetadata.Builder builder = type.toBuilder();
+    if (type.isTypeParameter()) {
+      builder.setName(rename(type.name())).setBounds(applyAll(type.bounds()));
+    } else {
+      builder.setParams(applyAll(type.params()));
+    }
+    return builder.build();
+  }
+
+  /** Applies the substitution to each type, returning the same list if none of them change. */
+  ImmutableList<TypeMetadata> applyAll(ImmutableList<TypeMetadata> types) {
+    ImmutableList.Builder<TypeMetadata> converted = null;
+    for (int i = 0; i < types.size(); i++) {
+      TypeMetadata type = types.get(i);
+      TypeMetadata result = apply(type);
+      if (converted == null && result != type) {
+        converted = ImmutableList.builder();
+        converted.addAll(types.subList(0, i));
+      }
+      if (converted != null) {
+        converted.add(result);
+      }
+    }
+    return converted == null ? types : converted.build();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof TypeSubstitution && names.equals(((TypeSubstitution) o).names);
+  }
+
+  @Override
+  public int hashCode() {
+    return names.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return names.toString();
+  }
+}
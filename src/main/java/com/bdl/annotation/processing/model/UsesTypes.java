@@ -1,6 +1,7 @@
 package com.bdl.annotation.processing.model;
 
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Interface for classes that use types.
@@ -10,4 +11,30 @@ import java.util.Set;
 public interface UsesTypes {
 
   Set<TypeMetadata> getAllTypes();
+
+  /**
+   * Passes each type of {@link #getAllTypes()} to the consumer, without collecting them into a
+   * set first. A type may be passed more than once.
+   */
+  default void forEachType(Consumer<? super TypeMetadata> consumer) {
+    getAllTypes().forEach(consumer);
+  }
+
+  /** The types of {@link #getAllTypes()} as a {@link TypeSet}. */
+  default TypeSet typeSet() {
+    return TypeSet.of(this);
+  }
+
+  /**
+   * Passes each type of {@link #getAllTypes()} that is not yet in {@code seen} to the consumer,
+   * adding it to {@code seen}. Sharing one set across several calls visits each type only once.
+   */
+  default void forEachType(Set<TypeMetadata> seen, Consumer<? super TypeMetadata> consumer) {
+    forEachType(
+        type -> {
+          if (seen.add(type)) {
+            consumer.accept(type);
+          }
+        });
+  }
 }
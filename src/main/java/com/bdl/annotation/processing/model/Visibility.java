@@ -10,10 +10,16 @@ import java.util.Set;
  * @author Ben Leitner
  */
 public enum Visibility {
-  PUBLIC,
-  PROTECTED,
-  PACKAGE_LOCAL,
-  PRIVATE;
+  PUBLIC("public "),
+  PROTECTED("protected "),
+  PACKAGE_LOCAL(""),
+  PRIVATE("private ");
+
+  private final String prefix;
+
+  Visibility(String prefix) {
+    this.prefix = prefix;
+  }
 
   static Visibility forElement(Element element) {
     Set<Modifier> modifiers = element.getModifiers();
@@ -30,9 +36,6 @@ public enum Visibility {
   }
 
   public String prefix() {
-    if (this == PACKAGE_LOCAL) {
-      return "";
-    }
-    return String.format("%s ", name().toLowerCase());
+    return prefix;
   }
 }
@@ -1,5 +1,6 @@
 package com.bdl.annotation.processing.model;
 
+import com.google.common.collect.ImmutableList;
 import com.google.testing.compile.CompilationRule;
 import org.junit.Before;
 import org.junit.Rule;
@@ -9,6 +10,13 @@ import org.junit.runners.JUnit4;
 
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.util.Elements;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static com.bdl.annotation.processing.model.TypeMetadata.VOID;
 import static com.bdl.annotation.processing.model.TypeMetadata.simpleTypeParam;
@@ -203,6 +211,107 @@ public class ClassMetadataTest {
         .build());
   }
 
+  @Test
+  public void testAllMethodsMergesDiamondInheritance() {
+    metadata = ClassMetadata.fromElement(elements.getTypeElement(
+        "com.bdl.annotation.processing.model.TwoMethods.BothSides"));
+    assertThat(metadata.getAllMethods()).containsExactly(
+        MethodMetadata.builder()
+            .setModifiers(Modifiers.visibility(Visibility.PUBLIC).makeAbstract())
+            .setType(VOID)
+            .setName("one")
+            .build(),
+        MethodMetadata.builder()
+            .setModifiers(Modifiers.visibility(Visibility.PUBLIC).makeAbstract())
+            .setType(VOID)
+            .setName("two")
+            .build());
+  }
+
+  @Test
+  public void testInheritedMembersComposeSubstitutions() {
+    MemberTable.Entry parameterized = null;
+    for (MemberTable.Entry entry : metadata.inheritedMembers().entries()) {
+      if (entry.declaringClass().type().name().equals("Parameterized")) {
+        parameterized = entry;
+      }
+    }
+    assertThat(parameterized).isNotNull();
+    // Parameterized<T> <- ExtendedParameterized<S> <- ExtendedExtendedParameterized<C> <- A
+    assertThat(parameterized.substitution().asMap()).containsExactly("T", "A");
+    assertThat(parameterized.paths()).isEqualTo(1);
+  }
+
+  @Test
+  public void testIndexedLookups() {
+    assertThat(metadata.methodsNamed("frozzle"))
+        .containsExactly(
+            MethodMetadata.builder()
+                .setModifiers(Modifiers.visibility(Visibility.PUBLIC))
+                .setType(simpleTypeParam("A"))
+                .setName("frozzle")
+                .addParameter(ParameterMetadata.of(simpleTypeParam("A"), "input"))
+                .build());
+    assertThat(metadata.methodsNamed("noSuchMethod")).isEmpty();
+
+    assertThat(metadata.field("anInt").containingClass().name()).isEqualTo("AbstractClass");
+    assertThat(metadata.field("superParameterized").modifiers().visibility())
+        .isEqualTo(Visibility.PROTECTED);
+    assertThat(metadata.field("aString")).isNull();
+
+    assertThat(metadata.constructorsWithArity(1)).hasSize(3);
+    assertThat(metadata.constructorsWithArity(0)).isEmpty();
+
+    assertThat(metadata.hasAnnotation(SomeAnnotation.class)).isTrue();
+    assertThat(metadata.annotation(TypeMetadata.from(SomeAnnotation.class)))
+        .isSameAs(metadata.annotations().get(0));
+    assertThat(metadata.hasAnnotation(Deprecated.class)).isFalse();
+  }
+
+  @Test
+  public void testFieldLookupFindsNearestHidingField() {
+    ClassMetadata leaf =
+        ClassMetadata.fromElement(
+            elements.getTypeElement("com.bdl.annotation.processing.model.HiddenFields.Leaf"));
+    FieldMetadata field = leaf.field("x");
+    assertThat(field.containingClass().name()).isEqualTo("Middle");
+    assertThat(field.modifiers().visibility()).isEqualTo(Visibility.PROTECTED);
+  }
+
+  @Test
+  public void testExtractionOptions() {
+    TypeElement element =
+        elements.getTypeElement("com.bdl.annotation.processing.model.AbstractClass");
+    ExtractionOptions options =
+        ExtractionOptions.builder()
+            .setSkipPrivateMembers(true)
+            .setSkipAnnotations(true)
+            .setSkipFields(true)
+            .stopAtPackage("java.*")
+            .build();
+    assertThat(options.stopsAt("java")).isTrue();
+    assertThat(options.stopsAt("java.util")).isTrue();
+    assertThat(options.stopsAt("javax.lang")).isFalse();
+
+    ClassMetadata skimmed = ClassMetadata.fromElement(element, options);
+    assertThat(skimmed).isNotEqualTo(metadata);
+    assertThat(skimmed.annotations()).isEmpty();
+    assertThat(skimmed.fields()).isEmpty();
+    assertThat(skimmed.constructors()).hasSize(2);
+    assertThat(skimmed.methodsNamed("hashCode")).isEmpty();
+    assertThat(skimmed.methodsNamed("blorp")).hasSize(1);
+    ExtractionOptions equalOptions =
+        ExtractionOptions.builder()
+            .setSkipPrivateMembers(true)
+            .setSkipAnnotations(true)
+            .setSkipFields(true)
+            .stopAtPackage("java.*")
+            .build();
+    assertThat(ClassMetadata.fromElement(element, equalOptions)).isSameAs(skimmed);
+    assertThat(ClassMetadata.fromElement(element, ExtractionOptions.defaults()))
+        .isSameAs(metadata);
+  }
+
   @Test
   public void testAllMethods() {
     TypeMetadata typeEExtendsListOfD =
@@ -420,4 +529,129 @@ public class ClassMetadataTest {
         .containsExactly(
             AnnotationMetadata.builder().setType(TestingTypes.SOME_ANNOTATION).build());
   }
+
+  @Test
+  public void testEqualityAndHashCode() {
+    ClassMetadata.clearCache();
+    ClassMetadata other =
+        ClassMetadata.fromElement(
+            elements.getTypeElement("com.bdl.annotation.processing.model.AbstractClass"));
+    assertThat(other).isNotSameAs(metadata);
+    assertThat(other).isEqualTo(metadata);
+    assertThat(other.hashCode()).isEqualTo(metadata.hashCode());
+
+    ClassMetadata superclass = metadata.inheritances().get(0).classMetadata();
+    assertThat(superclass).isNotEqualTo(metadata);
+  }
+
+  @Test
+  public void testDerivedViewsAreSafeToShare() throws Exception {
+    ImmutableList<MethodMetadata> expectedMethods = metadata.getAllMethods();
+    ImmutableList<FieldMetadata> expectedFields = metadata.getAllFields();
+    ClassMetadata.clearCache();
+    ClassMetadata shared =
+        ClassMetadata.fromElement(
+                elements.getTypeElement("com.bdl.annotation.processing.model.AbstractClass"))
+            .resolveHierarchy();
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (int i = 0; i < 32; i++) {
+        results.add(
+            executor.submit(
+                () ->
+                    shared.getAllMethods().equals(expectedMethods)
+                        && shared.getAllFields().equals(expectedFields)
+                        && shared.type().getAllTypes().equals(metadata.type().getAllTypes())));
+      }
+      for (Future<Boolean> result : results) {
+        assertThat(result.get()).isTrue();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testExtractionIsShared() {
+    assertThat(
+            ClassMetadata.fromElement(
+                elements.getTypeElement("com.bdl.annotation.processing.model.AbstractClass")))
+        .isSameAs(metadata);
+
+    ClassMetadata superclass =
+        ClassMetadata.fromElement(
+            elements.getTypeElement("com.bdl.annotation.processing.model.AbstractSuperclass"));
+    assertThat(metadata.inheritances().get(0).classMetadata()).isSameAs(superclass);
+  }
+
+  @Test
+  public void testForEachType() {
+    Set<TypeMetadata> seen = new HashSet<>();
+    List<TypeMetadata> visited = new ArrayList<>();
+    metadata.forEachType(seen, visited::add);
+    assertThat(visited).containsExactlyElementsIn(metadata.getAllTypes()).inOrder();
+
+    List<TypeMetadata> again = new ArrayList<>();
+    metadata.forEachType(seen, again::add);
+    assertThat(again).isEmpty();
+  }
+
+  @Test
+  public void testHierarchyTypeSet() {
+    ClassMetadata superclass = metadata.inheritances().get(0).classMetadata();
+    assertThat(metadata.typeSet().toSet()).isEqualTo(metadata.getAllTypes());
+    assertThat(metadata.hierarchyTypeSet().containsAll(metadata.typeSet())).isTrue();
+    assertThat(metadata.hierarchyTypeSet().containsAll(superclass.hierarchyTypeSet())).isTrue();
+    assertThat(metadata.hierarchyTypeSet()).isSameAs(metadata.hierarchyTypeSet());
+  }
+
+  @Test
+  public void testFromElements() {
+    ClassMetadata.clearCache();
+    TypeElement abstractClass =
+        elements.getTypeElement("com.bdl.annotation.processing.model.AbstractClass");
+    TypeElement bothSides =
+        elements.getTypeElement("com.bdl.annotation.processing.model.TwoMethods.BothSides");
+    BatchExtraction batch = ClassMetadata.fromElements(ImmutableList.of(bothSides, abstractClass));
+    assertThat(batch.metadata().keySet()).containsExactly(bothSides, abstractClass).inOrder();
+    assertThat(batch.extractedCount()).isEqualTo(batch.typeCount());
+    assertThat(batch.typeCount()).isGreaterThan(2);
+
+    ClassMetadata root = batch.metadata().get(abstractClass);
+    assertThat(ClassMetadata.fromElement(abstractClass)).isSameAs(root);
+    assertThat(root.inheritances().get(0).classMetadata())
+        .isSameAs(
+            ClassMetadata.fromElement(
+                elements.getTypeElement("com.bdl.annotation.processing.model.AbstractSuperclass")));
+
+    BatchExtraction again = ClassMetadata.fromElements(ImmutableList.of(abstractClass));
+    assertThat(again.extractedCount()).isEqualTo(0);
+    assertThat(again.metadata().get(abstractClass)).isSameAs(root);
+  }
+
+  @Test
+  public void testSupertypesAreResolvedLazily() {
+    ClassMetadata.clearCache();
+    ClassMetadata root =
+        ClassMetadata.fromElement(
+            elements.getTypeElement("com.bdl.annotation.processing.model.AbstractClass"));
+    InheritanceMetadata inheritance = root.inheritances().get(0);
+    assertThat(inheritance.type())
+        .isEqualTo(
+            TypeMetadata.builder()
+                .setPackageName("com.bdl.annotation.processing.model")
+                .setName("AbstractSuperclass")
+                .addParam(simpleTypeParam("Q"))
+                .build());
+
+    // Nothing has resolved the supertype yet, so it comes from whatever the cache holds now.
+    ClassMetadata.clearCache();
+    ClassMetadata superclass =
+        ClassMetadata.fromElement(
+            elements.getTypeElement("com.bdl.annotation.processing.model.AbstractSuperclass"));
+    assertThat(inheritance.classMetadata()).isSameAs(superclass);
+    assertThat(inheritance.classMetadata()).isSameAs(superclass);
+  }
 }
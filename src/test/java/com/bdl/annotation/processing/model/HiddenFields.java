@@ -0,0 +1,20 @@
+package com.bdl.annotation.processing.model;
+
+/**
+ * Classes whose fields hide fields of their superclasses, used for field lookup testing.
+ *
+ * @author Ben Leitner
+ */
+@SuppressWarnings("unused") // Used via compiler element search in ClassMetadataTest.
+public class HiddenFields {
+
+  public int x;
+
+  /** Hides {@link HiddenFields#x} with a less visible field. */
+  public static class Middle extends HiddenFields {
+    protected int x;
+  }
+
+  /** Inherits {@link Middle#x}, which hides the public field. */
+  public static class Leaf extends Middle {}
+}
@@ -0,0 +1,104 @@
+package com.bdl.annotation.processing.model;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link Imports}.
+ *
+ * @author Ben Leitner
+ */
+@RunWith(JUnit4.class)
+public class ImportsTest {
+
+  private static final TypeMetadata UTIL_LIST = TypeMetadata.of("java.util", "List");
+  private static final TypeMetadata AWT_LIST = TypeMetadata.of("java.awt", "List");
+  private static final TypeMetadata LOCAL_THING = TypeMetadata.of("com.example", "Thing");
+  private static final TypeMetadata OTHER_THING = TypeMetadata.of("com.other", "Thing");
+
+  @Test
+  public void testBuilderResolvesCollisionsAsTypesAreRegistered() {
+    Imports.Builder builder = Imports.builder("com.example");
+    Imports scope = builder.scope();
+
+    StringBuilder s = new StringBuilder();
+    TypeMetadata.parameterized(UTIL_LIST, TypeMetadata.STRING).appendTo(s, scope);
+    s.append(' ');
+    AWT_LIST.appendTo(s, scope);
+    assertThat(s.toString()).isEqualTo("List<String> java.awt.List");
+
+    assertThat(builder.register(OTHER_THING)).isEqualTo(Imports.ReferenceType.NAME_ONLY);
+    assertThat(builder.register(LOCAL_THING))
+        .isEqualTo(Imports.ReferenceType.FULLY_QUALIFIED_PATH_NAME);
+    assertThat(builder.register(UTIL_LIST)).isEqualTo(Imports.ReferenceType.NAME_ONLY);
+
+    Imports imports = builder.build();
+    assertThat(imports.getImports()).containsExactly("com.other.Thing", "java.util.List").inOrder();
+    assertThat(imports.reference(AWT_LIST))
+        .isEqualTo(Imports.ReferenceType.FULLY_QUALIFIED_PATH_NAME);
+    assertThat(imports.reference(LOCAL_THING))
+        .isEqualTo(Imports.ReferenceType.FULLY_QUALIFIED_PATH_NAME);
+
+    // An unregistered type whose name was claimed is qualified, even in the file's own package.
+    Imports.Builder otherThingOnly = Imports.builder("com.example");
+    otherThingOnly.register(OTHER_THING);
+    assertThat(otherThingOnly.build().reference(LOCAL_THING))
+        .isEqualTo(Imports.ReferenceType.FULLY_QUALIFIED_PATH_NAME);
+
+    // Types registered after freezing do not change the frozen imports.
+    builder.register(TypeMetadata.of("java.util", "Map"));
+    assertThat(imports.getImports()).containsExactly("com.other.Thing", "java.util.List").inOrder();
+  }
+
+  @Test
+  public void testCreate() {
+    Imports imports = Imports.create("com.example", ImmutableList.of(UTIL_LIST, AWT_LIST));
+    assertThat(imports.reference(UTIL_LIST))
+        .isEqualTo(Imports.ReferenceType.FULLY_QUALIFIED_PATH_NAME);
+    assertThat(imports.reference(LOCAL_THING)).isEqualTo(Imports.ReferenceType.NAME_ONLY);
+    assertThat(imports.getImports()).isEmpty();
+  }
+
+  @Test
+  public void testRenderingCache() {
+    Imports imports =
+        Imports.create("com.example", ImmutableList.of(UTIL_LIST)).withRenderingCache(16);
+    TypeMetadata type = TypeMetadata.parameterized(UTIL_LIST, TypeMetadata.typeVar("T", AWT_LIST));
+    String rendered = type.toString(imports);
+    assertThat(rendered).isEqualTo("List<T>");
+    assertThat(type.toString(imports)).isSameAs(rendered);
+    assertThat(type.toString(imports, true)).isEqualTo("List<T extends java.awt.List>");
+    assertThat(type.appendTo(new StringBuilder("a "), imports).toString()).isEqualTo("a List<T>");
+
+    MethodMetadata first = add("first", "second");
+    MethodMetadata second = add("anInt", "anotherInt");
+    assertThat(first.toString(imports)).isEqualTo("public int add(int first, int second)");
+    // Equal methods are cached by identity, so parameter names are kept.
+    assertThat(second.toString(imports)).isEqualTo("public int add(int anInt, int anotherInt)");
+    assertThat(first.toString(imports)).isSameAs(first.toString(imports));
+  }
+
+  @Test
+  public void testRenderingCacheOnLiveScope() {
+    Imports.Builder builder = Imports.builder("com.example");
+    Imports scope = builder.scope().withRenderingCache(1);
+    assertThat(UTIL_LIST.toString(scope)).isEqualTo("List");
+    assertThat(AWT_LIST.toString(scope)).isEqualTo("java.awt.List");
+    assertThat(UTIL_LIST.toString(scope)).isEqualTo("List");
+    assertThat(builder.build().getImports()).containsExactly("java.util.List");
+  }
+
+  private static MethodMetadata add(String firstName, String secondName) {
+    return MethodMetadata.builder()
+        .setModifiers(Modifiers.visibility(Visibility.PUBLIC))
+        .setType(TypeMetadata.INT)
+        .setName("add")
+        .addParameter(ParameterMetadata.of(TypeMetadata.INT, firstName))
+        .addParameter(ParameterMetadata.of(TypeMetadata.INT, secondName))
+        .build();
+  }
+}
@@ -128,13 +128,20 @@ public class InheritanceMetadataTest {
                         .build())
                 .build());
 
-    assertThat(actual.getAllMethods())
+    // The inherited methods are seen with the inheriting class's type parameters.
+    assertThat(ClassMetadata.fromElement(simpleElement).getAllMethods())
         .containsExactly(
             MethodMetadata.builder()
                 .setModifiers(Modifiers.visibility(Visibility.PUBLIC).makeAbstract())
                 .setType(TestingTypes.PARAM_S)
                 .setName("frozzle")
                 .addParameter(ParameterMetadata.of(TestingTypes.PARAM_S, "input"))
+                .build(),
+            MethodMetadata.builder()
+                .setModifiers(Modifiers.visibility(Visibility.PUBLIC).makeAbstract())
+                .setType(TestingTypes.PARAM_S)
+                .setName("extendedFrozzle")
+                .addParameter(ParameterMetadata.of(TestingTypes.PARAM_S, "input"))
                 .build());
   }
 
@@ -202,7 +209,7 @@ public class InheritanceMetadataTest {
                         .build())
                 .build());
 
-    assertThat(actual.getAllMethods())
+    assertThat(ClassMetadata.fromElement(simpleElement).getAllMethods())
         .containsExactly(
             MethodMetadata.builder()
                 .setModifiers(Modifiers.visibility(Visibility.PUBLIC).makeAbstract())
@@ -215,6 +222,12 @@ public class InheritanceMetadataTest {
                 .setType(simpleTypeParam("C"))
                 .setName("extendedFrozzle")
                 .addParameter(ParameterMetadata.of(simpleTypeParam("C"), "input"))
+                .build(),
+            MethodMetadata.builder()
+                .setModifiers(Modifiers.visibility(Visibility.PUBLIC).makeAbstract())
+                .setType(simpleTypeParam("C"))
+                .setName("superExtendedFrozzle")
+                .addParameter(ParameterMetadata.of(simpleTypeParam("C"), "input"))
                 .build());
   }
 }
@@ -0,0 +1,42 @@
+package com.bdl.annotation.processing.model;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link LazyList}.
+ *
+ * @author Ben Leitner
+ */
+@RunWith(JUnit4.class)
+public class LazyListTest {
+
+  @Test
+  public void testElementsAreConvertedOnFirstAccess() {
+    List<Integer> converted = new ArrayList<>();
+    LazyList<String> list =
+        new LazyList<>(
+            3,
+            i -> {
+              converted.add(i);
+              return "element" + i;
+            });
+    assertThat(list).hasSize(3);
+    assertThat(converted).isEmpty();
+
+    assertThat(list.get(1)).isEqualTo("element1");
+    assertThat(list.get(1)).isSameAs(list.get(1));
+    assertThat(converted).containsExactly(1);
+
+    LazyList.materialize(list.asSet());
+    assertThat(converted).containsExactly(1, 0, 2).inOrder();
+    assertThat(list).containsExactly("element0", "element1", "element2").inOrder();
+    assertThat(converted).hasSize(3);
+  }
+}
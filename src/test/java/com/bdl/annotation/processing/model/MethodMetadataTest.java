@@ -236,4 +236,24 @@ public class MethodMetadataTest {
     assertThat(method.convertTypeParameters(ImmutableMap.of("Y", "A", "Z", "T")))
         .isEqualTo(expected);
   }
+
+  @Test
+  public void testAppendTo() {
+    MethodMetadata method =
+        MethodMetadata.fromMethod(
+            getMethodElement("com.bdl.annotation.processing.model.ComplexParameterized", "filter"));
+    StringBuilder s = new StringBuilder("// ");
+    assertThat(method.appendTo(s, Imports.empty())).isSameAs(s);
+    // Parameter names depend on whether the fixture was compiled with -parameters.
+    String source = method.parameters().get(0).name();
+    String predicate = method.parameters().get(1).name();
+    assertThat(s.toString())
+        .isEqualTo(
+            "// public abstract <A, B extends java.util.List<A>>"
+                + " com.google.common.collect.ImmutableList<A> filter(B "
+                + source
+                + ", com.google.common.base.Predicate<A> "
+                + predicate
+                + ")");
+  }
 }
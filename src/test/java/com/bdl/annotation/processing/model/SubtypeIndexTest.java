@@ -0,0 +1,63 @@
+package com.bdl.annotation.processing.model;
+
+import com.google.testing.compile.CompilationRule;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.lang.model.util.Elements;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link SubtypeIndex}.
+ *
+ * @author Ben Leitner
+ */
+@RunWith(JUnit4.class)
+public class SubtypeIndexTest {
+
+  private static final String PACKAGE = "com.bdl.annotation.processing.model.";
+
+  @Rule public final CompilationRule compilation = new CompilationRule();
+
+  private Elements elements;
+
+  @Before
+  public void before() {
+    elements = compilation.getElements();
+  }
+
+  private ClassMetadata metadata(String name) {
+    return ClassMetadata.fromElement(elements.getTypeElement(PACKAGE + name));
+  }
+
+  @Test
+  public void testDirectAndTransitiveSubtypes() {
+    ClassMetadata bothSides = metadata("TwoMethods.BothSides");
+    ClassMetadata left = metadata("TwoMethods.Left");
+    SubtypeIndex index = new SubtypeIndex().register(bothSides).register(left);
+
+    assertThat(index.directSubtypes(PACKAGE + "TwoMethods")).containsExactly(left);
+    assertThat(index.transitiveSubtypes(PACKAGE + "TwoMethods"))
+        .containsExactly(bothSides, left)
+        .inOrder();
+    assertThat(index.directSubtypes(left.type())).containsExactly(bothSides);
+    assertThat(index.transitiveSubtypes(PACKAGE + "TwoMethods.Right")).containsExactly(bothSides);
+    assertThat(index.transitiveSubtypes(bothSides.type())).isEmpty();
+  }
+
+  @Test
+  public void testRegistrationIsIncremental() {
+    SubtypeIndex index = new SubtypeIndex();
+    assertThat(index.transitiveSubtypes(PACKAGE + "Parameterized")).isEmpty();
+
+    ClassMetadata abstractClass = metadata("AbstractClass");
+    index.register(abstractClass).register(abstractClass);
+    assertThat(index.transitiveSubtypes(PACKAGE + "Parameterized")).containsExactly(abstractClass);
+    assertThat(index.transitiveSubtypes("java.lang.Object")).containsExactly(abstractClass);
+    assertThat(index.directSubtypes(PACKAGE + "Parameterized")).isEmpty();
+  }
+}
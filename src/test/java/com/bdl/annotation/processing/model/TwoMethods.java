@@ -13,4 +13,10 @@ public interface TwoMethods {
     public void one() {
     }
   }
+
+  interface Left extends TwoMethods {}
+
+  interface Right extends TwoMethods {}
+
+  interface BothSides extends Left, Right {}
 }
@@ -0,0 +1,76 @@
+package com.bdl.annotation.processing.model;
+
+import com.google.testing.compile.CompilationRule;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.lang.model.util.Elements;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link TypeHierarchy}.
+ *
+ * @author Ben Leitner
+ */
+@RunWith(JUnit4.class)
+public class TypeHierarchyTest {
+
+  @Rule public final CompilationRule compilation = new CompilationRule();
+
+  private Elements elements;
+
+  @Before
+  public void before() {
+    elements = compilation.getElements();
+  }
+
+  private ClassMetadata metadata(String name) {
+    return ClassMetadata.fromElement(
+        elements.getTypeElement("com.bdl.annotation.processing.model." + name));
+  }
+
+  @Test
+  public void testSubtypes() {
+    ClassMetadata abstractClass = metadata("AbstractClass");
+    ClassMetadata parameterized = metadata("Parameterized");
+    ClassMetadata object = ClassMetadata.fromElement(elements.getTypeElement("java.lang.Object"));
+    TypeHierarchy hierarchy = TypeHierarchy.of(abstractClass);
+
+    assertThat(hierarchy.isSubtype(abstractClass, parameterized)).isTrue();
+    assertThat(hierarchy.isSubtype(abstractClass, object)).isTrue();
+    assertThat(hierarchy.isSubtype(abstractClass, abstractClass)).isTrue();
+    assertThat(hierarchy.isSubtype(parameterized, abstractClass)).isFalse();
+    assertThat(hierarchy.supertypes(abstractClass)).contains(metadata("AbstractSuperclass"));
+    assertThat(hierarchy.supertypes(abstractClass)).doesNotContain(abstractClass);
+    assertThat(hierarchy.contains(metadata("TwoMethods"))).isFalse();
+  }
+
+  @Test
+  public void testTopologicalOrder() {
+    TypeHierarchy hierarchy =
+        TypeHierarchy.of(metadata("AbstractClass"), metadata("TwoMethods.BothSides"));
+    List<ClassMetadata> classes = hierarchy.inTopologicalOrder();
+    for (int i = 0; i < classes.size(); i++) {
+      for (ClassMetadata supertype : hierarchy.supertypes(classes.get(i))) {
+        assertThat(classes.indexOf(supertype)).isLessThan(i);
+      }
+    }
+  }
+
+  @Test
+  public void testCommonSupertypes() {
+    ClassMetadata left = metadata("TwoMethods.Left");
+    ClassMetadata right = metadata("TwoMethods.Right");
+    ClassMetadata bothSides = metadata("TwoMethods.BothSides");
+    TypeHierarchy hierarchy = TypeHierarchy.of(bothSides);
+
+    assertThat(hierarchy.commonSupertypes(left, right)).containsExactly(metadata("TwoMethods"));
+    assertThat(hierarchy.commonSupertypes(bothSides, left)).containsExactly(left);
+    assertThat(hierarchy.commonSupertypes(bothSides)).containsExactly(bothSides);
+  }
+}
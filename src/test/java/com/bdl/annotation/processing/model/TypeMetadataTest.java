@@ -12,6 +12,7 @@ import org.junit.runners.JUnit4;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.util.Elements;
+import java.lang.reflect.Type;
 
 import static com.google.common.truth.Truth.assertThat;
 
@@ -393,4 +394,153 @@ public class TypeMetadataTest {
     assertThat(type).isEqualTo(TypeMetadata.INT.arrayOf().arrayOf().arrayOf());
     assertThat(type.toString(Imports.empty())).isEqualTo("int[][][]");
   }
+
+  @Test
+  public void testInterning() {
+    TypeElement element =
+        elements.getTypeElement("com.bdl.annotation.processing.model.Parameterized");
+    TypeMetadata type = TypeMetadata.fromElement(element);
+    assertThat(type)
+        .isSameAs(
+            TypeMetadata.builder()
+                .setPackageName("com.bdl.annotation.processing.model")
+                .setName("Parameterized")
+                .addParam(TypeMetadata.simpleTypeParam("T"))
+                .build());
+    assertThat(type.rawType())
+        .isSameAs(
+            TypeMetadata.builder()
+                .setPackageName("com.bdl.annotation.processing.model")
+                .setName("Parameterized")
+                .build());
+    assertThat(type.convertTypeParams(ImmutableList.of(TypeMetadata.simpleTypeParam("T"))))
+        .isSameAs(type);
+    assertThat(TypeMetadata.from(String.class)).isSameAs(TypeMetadata.STRING);
+    assertThat(TypeMetadata.STRING.arrayOf()).isSameAs(TypeMetadata.STRING.arrayOf());
+  }
+
+  @Test
+  public void testMirrorCache() {
+    TypeMetadata.clearMirrorCache();
+    TypeElement element =
+        elements.getTypeElement("com.bdl.annotation.processing.model.ParameterizedMultibound");
+    TypeMetadata type = TypeMetadata.fromElement(element);
+    long misses = TypeMetadata.mirrorCacheStats().missCount();
+    assertThat(misses).isGreaterThan(0L);
+
+    assertThat(TypeMetadata.fromElement(element)).isSameAs(type);
+    assertThat(TypeMetadata.mirrorCacheStats().missCount()).isEqualTo(misses);
+    assertThat(TypeMetadata.mirrorCacheStats().hitCount()).isGreaterThan(0L);
+
+    TypeMetadata.clearMirrorCache();
+    assertThat(TypeMetadata.mirrorCacheStats().requestCount()).isEqualTo(0L);
+  }
+
+  @Test
+  public void testFromReflectedTypes() {
+    TypeMetadata superclass = TypeMetadata.from(AbstractSuperclass.class);
+    assertThat(TypeMetadata.from(AbstractSuperclass.class)).isSameAs(superclass);
+
+    Type otherParameterized = AbstractSuperclass.class.getGenericInterfaces()[1];
+    TypeMetadata expected =
+        TypeMetadata.builder()
+            .setPackageName("com.bdl.annotation.processing.model")
+            .setName("OtherParameterized")
+            .addParam(TypeMetadata.simpleTypeParam("Q"))
+            .build();
+    assertThat(TypeMetadata.from(otherParameterized)).isEqualTo(expected);
+    assertThat(TypeMetadata.from(otherParameterized)).isSameAs(expected);
+
+    assertThat(TypeMetadata.fromObject("foo")).isSameAs(TypeMetadata.STRING);
+    assertThat(ValueMetadata.create(5L).type()).isSameAs(TypeMetadata.BOXED_LONG);
+  }
+
+  @Test
+  public void testDerivedNamesAreShared() {
+    TypeMetadata inner =
+        TypeMetadata.fromElement(
+            elements.getTypeElement("com.bdl.annotation.processing.model.TopLevel.Outer.Inner"));
+    TypeMetadata simple =
+        TypeMetadata.fromElement(
+            elements.getTypeElement("com.bdl.annotation.processing.model.Simple"));
+
+    assertThat(inner.packageName()).isSameAs(simple.packageName());
+    assertThat(inner.nestingPrefix()).isEqualTo("TopLevel.Outer.");
+    assertThat(inner.fullyQualifiedPathName())
+        .isEqualTo("com.bdl.annotation.processing.model.TopLevel.Outer.Inner");
+    assertThat(inner.fullyQualifiedPathName()).isSameAs(inner.fullyQualifiedPathName());
+    assertThat(TypeMetadata.INT.fullyQualifiedPathName()).isSameAs(TypeMetadata.INT.name());
+  }
+
+  @Test
+  public void testPrimitives() {
+    assertThat(TypeMetadata.INT.isPrimitive()).isTrue();
+    assertThat(TypeMetadata.VOID.isPrimitive()).isTrue();
+    assertThat(TypeMetadata.BOXED_INTEGER.isPrimitive()).isFalse();
+    assertThat(TypeMetadata.INT.arrayOf().isPrimitive()).isFalse();
+
+    assertThat(TypeMetadata.INT.boxed()).isSameAs(TypeMetadata.BOXED_INTEGER);
+    assertThat(TypeMetadata.BOXED_CHARACTER.unboxed()).isSameAs(TypeMetadata.CHAR);
+    assertThat(TypeMetadata.STRING.boxed()).isSameAs(TypeMetadata.STRING);
+    assertThat(TypeMetadata.STRING.unboxed()).isSameAs(TypeMetadata.STRING);
+
+    assertThat(TypeMetadata.LONG.primitiveWidth()).isEqualTo(64);
+    assertThat(TypeMetadata.BOOLEAN.primitiveWidth()).isEqualTo(1);
+
+    assertThat(TypeMetadata.LONG.defaultValueLiteral()).isEqualTo("0L");
+    assertThat(TypeMetadata.CHAR.defaultValueLiteral()).isEqualTo("'\\u0000'");
+    assertThat(TypeMetadata.BOXED_LONG.defaultValueLiteral()).isEqualTo("null");
+
+    assertThat(TypeMetadata.SHORT.kind()).isEqualTo(Kind.NUMERIC);
+    assertThat(TypeMetadata.BOXED_BOOLEAN.kind()).isEqualTo(Kind.BOOLEAN);
+    assertThat(TypeMetadata.STRING.kind()).isEqualTo(Kind.STRING);
+    assertThat(TypeMetadata.BOXED_VOID.kind()).isEqualTo(Kind.VOID);
+    assertThat(TypeMetadata.OBJECT.kind()).isEqualTo(Kind.OBJECT);
+  }
+
+  @Test
+  public void testFactories() {
+    assertThat(TypeMetadata.of("java.lang", "String")).isSameAs(TypeMetadata.STRING);
+    assertThat(TypeMetadata.of("", "int")).isSameAs(TypeMetadata.INT);
+
+    TypeMetadata list = TypeMetadata.of("java.util", "List");
+    assertThat(TypeMetadata.parameterized(list, TypeMetadata.typeVar("T")))
+        .isSameAs(
+            TypeMetadata.builder()
+                .setPackageName("java.util")
+                .setName("List")
+                .addParam(TypeMetadata.simpleTypeParam("T"))
+                .build());
+
+    assertThat(TypeMetadata.typeVar("F", TypeMetadata.parameterized(list, TestingTypes.PARAM_T)))
+        .isSameAs(
+            TypeMetadata.builder()
+                .setIsTypeParameter(true)
+                .setName("F")
+                .addBound(
+                    TypeMetadata.builder()
+                        .setPackageName("java.util")
+                        .setName("List")
+                        .addParam(TestingTypes.PARAM_T)
+                        .build())
+                .build());
+  }
+
+  @Test
+  public void testRawTypesAreCanonical() {
+    TypeMetadata list = TypeMetadata.of("java.util", "List");
+    TypeMetadata listOfString = TypeMetadata.parameterized(list, TypeMetadata.STRING);
+    assertThat(listOfString.rawType()).isSameAs(list);
+    assertThat(listOfString.rawType()).isSameAs(listOfString.rawType());
+    assertThat(TypeMetadata.parameterized(list, TypeMetadata.BOXED_INTEGER).rawType())
+        .isSameAs(list);
+
+    Imports imports = Imports.create("com.example", ImmutableList.of(list));
+    assertThat(imports.reference(listOfString)).isEqualTo(Imports.ReferenceType.NAME_ONLY);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParameterizedRequiresRawType() {
+    TypeMetadata.parameterized(TypeMetadata.CLASS, TypeMetadata.STRING);
+  }
 }
@@ -0,0 +1,91 @@
+package com.bdl.annotation.processing.model;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link TypeSet}.
+ *
+ * @author Ben Leitner
+ */
+@RunWith(JUnit4.class)
+public class TypeSetTest {
+
+  private static final TypeMetadata LIST = TypeMetadata.of("java.util", "List");
+  private static final TypeMetadata MAP = TypeMetadata.of("java.util", "Map");
+  private static final TypeMetadata SET = TypeMetadata.of("java.util", "Set");
+
+  @Test
+  public void testSetOperations() {
+    TypeSet listAndMap = TypeSet.of(LIST, MAP);
+    TypeSet mapAndSet = TypeSet.of(ImmutableList.of(MAP, SET));
+
+    assertThat(listAndMap.contains(LIST)).isTrue();
+    assertThat(listAndMap.contains(SET)).isFalse();
+    assertThat(listAndMap.contains(TypeMetadata.of("com.example", "Unregistered"))).isFalse();
+    assertThat(listAndMap.size()).isEqualTo(2);
+
+    assertThat(listAndMap.union(mapAndSet).toSet()).containsExactly(LIST, MAP, SET);
+    assertThat(listAndMap.intersection(mapAndSet)).isEqualTo(TypeSet.of(MAP));
+    assertThat(TypeSet.of(LIST).intersection(TypeSet.of(SET))).isSameAs(TypeSet.empty());
+    assertThat(listAndMap.union(TypeSet.of(MAP))).isSameAs(listAndMap);
+    assertThat(listAndMap.containsAll(TypeSet.of(MAP))).isTrue();
+    assertThat(listAndMap.containsAll(mapAndSet)).isFalse();
+    assertThat(TypeSet.of(MAP, LIST)).isEqualTo(listAndMap);
+  }
+
+  @Test
+  public void testOfUsesTypes() {
+    MethodMetadata method =
+        MethodMetadata.builder()
+            .setType(TypeMetadata.parameterized(LIST, TypeMetadata.STRING))
+            .setName("names")
+            .addParameter(ParameterMetadata.of(MAP, "source"))
+            .build();
+    assertThat(TypeSet.of(method).toSet()).isEqualTo(method.getAllTypes());
+    assertThat(method.typeSet()).isEqualTo(TypeSet.of(method.getAllTypes()));
+  }
+
+  @Test
+  public void testSmallSetsOverManyIdsAreSparse() {
+    ImmutableList.Builder<TypeMetadata> many = ImmutableList.builder();
+    for (int i = 0; i < 1000; i++) {
+      many.add(TypeMetadata.of("com.example.many", "Type" + i));
+    }
+    TypeSet all = TypeSet.of(many.build());
+    TypeMetadata last = TypeMetadata.of("com.example.many", "Type999");
+    TypeSet one = TypeSet.of(last);
+
+    assertThat(one.size()).isEqualTo(1);
+    assertThat(one.contains(last)).isTrue();
+    assertThat(one.contains(LIST)).isFalse();
+    assertThat(all.containsAll(one)).isTrue();
+    assertThat(one.containsAll(all)).isFalse();
+    assertThat(all.intersection(one)).isEqualTo(one);
+    assertThat(one.union(TypeSet.of(LIST)).toSet()).containsExactly(LIST, last);
+    assertThat(all.union(one)).isSameAs(all);
+    assertThat(TypeSet.of(last, LIST).intersection(one)).isEqualTo(one);
+  }
+
+  @Test
+  public void testSetsFromAnEarlierCompilationAreRenumbered() {
+    TypeSet before = TypeSet.of(LIST, MAP);
+    ClassMetadata.clearCache();
+    TypeSet after = TypeSet.of(SET, MAP);
+
+    assertThat(after.contains(LIST)).isFalse();
+    assertThat(before.contains(LIST)).isTrue();
+    assertThat(before.union(after).toSet()).containsExactly(LIST, MAP, SET);
+    assertThat(after.intersection(before).toSet()).containsExactly(MAP);
+    assertThat(after.containsAll(TypeSet.of(MAP))).isTrue();
+    assertThat(TypeSet.of(LIST, MAP)).isNotEqualTo(before);
+    assertThat(before.union(after)).isEqualTo(TypeSet.of(LIST, MAP, SET));
+    assertThat(after.union(before)).isEqualTo(TypeSet.of(LIST, MAP, SET));
+    assertThat(before.intersection(after)).isEqualTo(TypeSet.of(MAP));
+    assertThat(before.union(TypeSet.empty())).isEqualTo(TypeSet.of(LIST, MAP));
+  }
+}
@@ -0,0 +1,118 @@
+package com.bdl.annotation.processing.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static com.bdl.annotation.processing.model.TypeMetadata.simpleTypeParam;
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Tests for {@link TypeSubstitution}.
+ *
+ * @author Ben Leitner
+ */
+@RunWith(JUnit4.class)
+public class TypeSubstitutionTest {
+
+  private static final TypeMetadata LIST_OF_T =
+      TypeMetadata.builder()
+          .setPackageName("java.util")
+          .setName("List")
+          .addParam(simpleTypeParam("T"))
+          .build();
+
+  private static final TypeMetadata MAP_OF_STRING_TO_LIST_OF_T =
+      TypeMetadata.builder()
+          .setPackageName("java.util")
+          .setName("Map")
+          .addParam(TypeMetadata.STRING)
+          .addParam(LIST_OF_T)
+          .build();
+
+  @Test
+  public void testUnaffectedTypesAreShared() {
+    TypeSubstitution substitution = TypeSubstitution.of(ImmutableMap.of("S", "A"));
+    assertThat(substitution.apply(MAP_OF_STRING_TO_LIST_OF_T))
+        .isSameAs(MAP_OF_STRING_TO_LIST_OF_T);
+    assertThat(TypeSubstitution.of(ImmutableMap.of("T", "T")).isIdentity()).isTrue();
+  }
+
+  @Test
+  public void testOnlyChangedNodesAreRebuilt() {
+    TypeMetadata mapOfListOfTToString =
+        TypeMetadata.builder()
+            .setPackageName("java.util")
+            .setName("Map")
+            .addParam(LIST_OF_T)
+            .addParam(TypeMetadata.STRING)
+            .build();
+    TypeMetadata converted =
+        TypeSubstitution.of(ImmutableMap.of("T", "A")).apply(mapOfListOfTToString);
+    assertThat(converted)
+        .isEqualTo(
+            TypeMetadata.builder()
+                .setPackageName("java.util")
+                .setName("Map")
+                .addParam(
+                    TypeMetadata.builder()
+                        .setPackageName("java.util")
+                        .setName("List")
+                        .addParam(simpleTypeParam("A"))
+                        .build())
+                .addParam(TypeMetadata.STRING)
+                .build());
+    assertThat(converted.params().get(1)).isSameAs(TypeMetadata.STRING);
+  }
+
+  @Test
+  public void testAndThenWithinParams() {
+    TypeSubstitution first = TypeSubstitution.of(ImmutableMap.of("S", "T"));
+    TypeSubstitution second = TypeSubstitution.of(ImmutableMap.of("T", "U", "V", "W"));
+    assertThat(
+            first
+                .andThen(second, ImmutableList.of(simpleTypeParam("S"), simpleTypeParam("X")))
+                .asMap())
+        .containsExactly("S", "U");
+  }
+
+  @Test
+  public void testRenamingIsSimultaneous() {
+    TypeMetadata type =
+        TypeMetadata.builder()
+            .setPackageName("java.util")
+            .setName("Map")
+            .addParam(simpleTypeParam("A"))
+            .addParam(simpleTypeParam("B"))
+            .build();
+    assertThat(TypeSubstitution.of(ImmutableMap.of("A", "B", "B", "A")).apply(type))
+        .isEqualTo(
+            TypeMetadata.builder()
+                .setPackageName("java.util")
+                .setName("Map")
+                .addParam(simpleTypeParam("B"))
+                .addParam(simpleTypeParam("A"))
+                .build());
+  }
+
+  @Test
+  public void testAndThen() {
+    TypeSubstitution first = TypeSubstitution.of(ImmutableMap.of("T", "S", "U", "V"));
+    TypeSubstitution second = TypeSubstitution.of(ImmutableMap.of("S", "T", "V", "W", "X", "Y"));
+    TypeSubstitution composed = first.andThen(second);
+    assertThat(composed.asMap()).containsExactly("U", "W", "S", "T", "V", "W", "X", "Y");
+
+    TypeMetadata type =
+        TypeMetadata.builder()
+            .setPackageName("java.util")
+            .setName("Map")
+            .addParam(LIST_OF_T)
+            .addParam(simpleTypeParam("U"))
+            .addParam(simpleTypeParam("X"))
+            .build();
+    assertThat(composed.apply(type)).isEqualTo(second.apply(first.apply(type)));
+    assertThat(composed.apply(type).params().get(0)).isSameAs(LIST_OF_T);
+  }
+}